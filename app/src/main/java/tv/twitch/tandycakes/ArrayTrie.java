@@ -0,0 +1,238 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+/**
+ * <pre>
+ * An immutable, compiled form of a LinkedTrie, from LinkedTrie.compile().
+ *
+ * The nodes are numbered in breadth-first order, so the children of a node are
+ * a contiguous range of edges, and edge i always leads to node (i + 1). This
+ * means that a node only needs the start of its edges, and that a lookup just
+ * walks a few flat int arrays without allocating.
+ *
+ * The value that find() resolves to for each node (its own value, or else the
+ * value of its only completion) is also precomputed.
+ * </pre>
+ */
+public class ArrayTrie<V> {
+  public static final int NO_VALUE = -1;
+
+  // Package-private for TrieScanner & MappedTrie.
+  final int[] firstEdges;
+  final int[] edgeKeys;
+  final int[] valueIndexes;
+  final int[] completionIndexes;
+  private final Object[] values;
+  private final boolean allowLonger;
+  final boolean ignoreCase;
+  final boolean ignoreSpace;
+
+  ArrayTrie(int[] firstEdges,int[] edgeKeys,int[] valueIndexes,int[] completionIndexes
+      ,Object[] values,boolean allowLonger,boolean ignoreCase,boolean ignoreSpace) {
+    this.firstEdges = firstEdges;
+    this.edgeKeys = edgeKeys;
+    this.valueIndexes = valueIndexes;
+    this.completionIndexes = completionIndexes;
+    this.values = values;
+    this.allowLonger = allowLonger;
+    this.ignoreCase = ignoreCase;
+    this.ignoreSpace = ignoreSpace;
+  }
+
+  public V find(String partial) {
+    return find(partial,allowLonger);
+  }
+
+  public V find(String partial,boolean allowLonger) {
+    return find(partial,null,allowLonger);
+  }
+
+  public V find(String partial,V defaultValue) {
+    return find(partial,defaultValue,allowLonger);
+  }
+
+  public V find(String partial,V defaultValue,boolean allowLonger) {
+    final int index = findIndex(partial,allowLonger);
+
+    return (index != NO_VALUE) ? getValue(index) : defaultValue;
+  }
+
+  public V find(CharSequence text,int start,int end) {
+    return find(text,start,end,null,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end,V defaultValue) {
+    return find(text,start,end,defaultValue,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end,V defaultValue,boolean allowLonger) {
+    final int index = findIndex(text,start,end,allowLonger);
+
+    return (index != NO_VALUE) ? getValue(index) : defaultValue;
+  }
+
+  /**
+   * <pre>
+   * Same as find(), but returns the index of the value (for getValue()),
+   * or NO_VALUE.
+   * </pre>
+   */
+  public int findIndex(String partial,boolean allowLonger) {
+    if(partial == null) {
+      return NO_VALUE;
+    }
+
+    return findIndex(partial,0,partial.length(),allowLonger);
+  }
+
+  public int findIndex(CharSequence text,int start,int end,boolean allowLonger) {
+    if(start >= end) {
+      return NO_VALUE;
+    }
+
+    int node = 0;
+    int codePoint;
+
+    for(int i = start; i < end; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+      final int key = LinkedTrie.foldCodePoint(codePoint,ignoreCase,ignoreSpace);
+
+      if(key < 0) {
+        continue;
+      }
+
+      int child = getChild(node,key);
+
+      if(child < 0) {
+        // See LinkedTrie.find() for "allowLonger".
+        return allowLonger ? valueIndexes[node] : NO_VALUE;
+      }
+
+      node = child;
+    }
+
+    return (node != 0) ? completionIndexes[node] : NO_VALUE;
+  }
+
+  public int findTokens(CharSequence text,int[] indexes) {
+    return findTokens(text,0,text.length(),indexes,allowLonger);
+  }
+
+  /**
+   * <pre>
+   * Same as LinkedTrie.findTokens(), but stores each token's value index
+   * (or NO_VALUE), such as for indexing into a dispatch table.
+   * </pre>
+   */
+  public int findTokens(CharSequence text,int start,int end,int[] indexes,boolean allowLonger) {
+    int count = 0;
+    int node = -1; // If not in a token.
+    int longerIndex = NO_VALUE;
+    boolean isLonger = false;
+    int codePoint;
+
+    for(int i = start; i < end && count < indexes.length; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+
+      if(Character.isWhitespace(codePoint)) {
+        if(node >= 0) {
+          indexes[count++] = isLonger ? longerIndex : completionIndexes[node];
+          node = -1;
+        }
+
+        continue;
+      }
+
+      if(node < 0) {
+        node = 0;
+        isLonger = false;
+      }
+      else if(isLonger) {
+        continue; // Already resolved; just eat the rest of the token.
+      }
+
+      int child = getChild(node,LinkedTrie.foldCodePoint(codePoint,ignoreCase,false));
+
+      if(child < 0) {
+        isLonger = true;
+        longerIndex = allowLonger ? valueIndexes[node] : NO_VALUE;
+      }
+      else {
+        node = child;
+      }
+    }
+
+    if(node >= 0 && count < indexes.length) {
+      indexes[count++] = isLonger ? longerIndex : completionIndexes[node];
+    }
+
+    return count;
+  }
+
+  int getChild(int node,int codePoint) {
+    int low = firstEdges[node];
+    int high = firstEdges[node + 1] - 1;
+
+    // For a few children, a linear scan beats a binary search.
+    if((high - low) < 8) {
+      for(; low <= high; ++low) {
+        final int key = edgeKeys[low];
+
+        if(key == codePoint) {
+          return low + 1;
+        }
+        if(key > codePoint) {
+          break;
+        }
+      }
+
+      return -1;
+    }
+
+    while(low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int key = edgeKeys[mid];
+
+      if(key < codePoint) {
+        low = mid + 1;
+      }
+      else if(key > codePoint) {
+        high = mid - 1;
+      }
+      else {
+        return mid + 1;
+      }
+    }
+
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V getValue(int index) {
+    return (V)values[index];
+  }
+
+  public int getValueCount() {
+    return values.length;
+  }
+
+  public int getNodeCount() {
+    return valueIndexes.length;
+  }
+
+  public boolean isAllowLonger() {
+    return allowLonger;
+  }
+
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isIgnoreSpace() {
+    return ignoreSpace;
+  }
+}
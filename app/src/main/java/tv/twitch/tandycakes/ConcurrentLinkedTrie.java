@@ -0,0 +1,404 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <pre>
+ * A thread-safe LinkedTrie that also allows removing, such as for adding and
+ * removing chat commands while other threads are finding them.
+ *
+ * The nodes are immutable. Adding/removing copies only the nodes on the path
+ * of the name/alias and then swaps in the new root atomically, so readers
+ * never block and always see a consistent snapshot. Writers don't block
+ * either; they just retry if another writer swapped the root first.
+ * </pre>
+ */
+public class ConcurrentLinkedTrie<V> {
+  private final AtomicReference<Node<V>> rootNode = new AtomicReference<>(Node.empty());
+  private final NodeWalker<V> walker = new NodeWalker<>();
+  private volatile boolean allowLonger = true;
+  private final boolean ignoreCase;
+  private final boolean ignoreSpace;
+
+  public ConcurrentLinkedTrie() {
+    this(true);
+  }
+
+  public ConcurrentLinkedTrie(boolean allowLonger) {
+    this(allowLonger,false,false);
+  }
+
+  /**
+   * See LinkedTrie(boolean,boolean,boolean).
+   */
+  public ConcurrentLinkedTrie(boolean allowLonger,boolean ignoreCase,boolean ignoreSpace) {
+    this.allowLonger = allowLonger;
+    this.ignoreCase = ignoreCase;
+    this.ignoreSpace = ignoreSpace;
+  }
+
+  public void add(V value) {
+    if(value == null) {
+      throw new IllegalArgumentException("Null value.");
+    }
+
+    add(value.toString(),value);
+  }
+
+  public void add(String nameOrAlias,V value) {
+    nameOrAlias = buildKey(nameOrAlias);
+
+    if(nameOrAlias.isEmpty()) {
+      throw new IllegalArgumentException("Empty name/alias.");
+    }
+    if(value == null) {
+      throw new IllegalArgumentException("Null value.");
+    }
+
+    for(;;) {
+      Node<V> oldRoot = rootNode.get();
+      Node<V> newRoot = oldRoot.with(nameOrAlias,0,value);
+
+      // Already had a value? Don't overwrite it, like LinkedTrie.
+      if(newRoot == oldRoot || rootNode.compareAndSet(oldRoot,newRoot)) {
+        return;
+      }
+    }
+  }
+
+  public void addNameAndAlias(V value,String... aliases) {
+    add(value);
+    addAlias(value,aliases);
+  }
+
+  public void addNameAndAlias(String name,V value,String... aliases) {
+    add(name,value);
+    addAlias(value,aliases);
+  }
+
+  public void addAlias(V value,String... aliases) {
+    for(String alias: aliases) {
+      add(alias,value);
+    }
+  }
+
+  /**
+   * <pre>
+   * Removes the exact name/alias (not a partial) and returns its value,
+   * or null if it wasn't found.
+   *
+   * Nodes left without a value or children are pruned, so that a partial
+   * that now only has 1 name/alias that starts with it resolves to it again.
+   * </pre>
+   */
+  public V remove(String nameOrAlias) {
+    if(nameOrAlias == null || (nameOrAlias = buildKey(nameOrAlias)).isEmpty()) {
+      return null;
+    }
+
+    for(;;) {
+      Node<V> oldRoot = rootNode.get();
+      Node<V> newRoot = oldRoot.without(nameOrAlias,0);
+
+      if(newRoot == oldRoot) {
+        return null; // Not found.
+      }
+      if(newRoot == null) {
+        newRoot = Node.empty();
+      }
+
+      if(rootNode.compareAndSet(oldRoot,newRoot)) {
+        return oldRoot.findExact(nameOrAlias);
+      }
+    }
+  }
+
+  public void clear() {
+    rootNode.set(Node.empty());
+  }
+
+  public V find(String partial) {
+    return find(partial,allowLonger);
+  }
+
+  public V find(String partial,boolean allowLonger) {
+    return find(partial,null,allowLonger);
+  }
+
+  public V find(String partial,V defaultValue) {
+    return find(partial,defaultValue,allowLonger);
+  }
+
+  public V find(String partial,V defaultValue,boolean allowLonger) {
+    if(partial == null) {
+      return defaultValue;
+    }
+
+    return find(partial,0,partial.length(),defaultValue,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end) {
+    return find(text,start,end,null,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end,V defaultValue) {
+    return find(text,start,end,defaultValue,allowLonger);
+  }
+
+  /**
+   * See LinkedTrie.find().
+   */
+  public V find(CharSequence text,int start,int end,V defaultValue,boolean allowLonger) {
+    Node<V> node = walker.find(rootNode.get(),text,start,end,allowLonger,ignoreCase,ignoreSpace); // Snapshot.
+
+    return (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+  }
+
+  public int findTokens(CharSequence text,V[] values,V defaultValue) {
+    return findTokens(text,0,text.length(),values,defaultValue,allowLonger);
+  }
+
+  /**
+   * <pre>
+   * See LinkedTrie.findTokens().
+   *
+   * All tokens are found in the same snapshot.
+   * </pre>
+   */
+  public int findTokens(CharSequence text,int start,int end,V[] values,V defaultValue,boolean allowLonger) {
+    final Node<V> root = rootNode.get(); // Snapshot.
+
+    return walker.findTokens(root,text,start,end,values.length,allowLonger,ignoreCase,(node,index) -> {
+      values[index] = (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+    });
+  }
+
+  public List<V> findFuzzy(CharSequence text,int maxDistance) {
+    List<V> matches = new ArrayList<>();
+    findFuzzy(text,maxDistance,matches);
+
+    return matches;
+  }
+
+  public V findFuzzyUnique(CharSequence text,int maxDistance,V defaultValue) {
+    List<V> matches = findFuzzy(text,maxDistance);
+
+    return (matches.size() == 1) ? matches.get(0) : defaultValue;
+  }
+
+  /**
+   * See LinkedTrie.findFuzzy().
+   */
+  public int findFuzzy(CharSequence text,int maxDistance,Collection<? super V> matches) {
+    if(text == null || maxDistance < 0) {
+      return -1;
+    }
+
+    FuzzySearch<V> search = new FuzzySearch<>(buildKey(text),maxDistance);
+    walker.findFuzzy(rootNode.get(),0,search);
+
+    matches.addAll(search.getMatches());
+
+    return search.getDistance();
+  }
+
+  /**
+   * See LinkedTrie.buildKey().
+   */
+  public String buildKey(CharSequence nameOrAlias) {
+    return LinkedTrie.buildKey(nameOrAlias,ignoreCase,ignoreSpace);
+  }
+
+  public void setAllowLonger(boolean allowLonger) {
+    this.allowLonger = allowLonger;
+  }
+
+  public boolean isAllowLonger() {
+    return allowLonger;
+  }
+
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isIgnoreSpace() {
+    return ignoreSpace;
+  }
+
+  private static final class NodeWalker<V> extends TrieWalker<Node<V>,V> {
+    @Override
+    int getChildCount(Node<V> node) {
+      return node.keys.length;
+    }
+
+    @Override
+    int getKey(Node<V> node,int index) {
+      return node.keys[index];
+    }
+
+    @Override
+    Node<V> getChildAt(Node<V> node,int index) {
+      return node.children[index];
+    }
+
+    @Override
+    Node<V> getChild(Node<V> node,int codePoint) {
+      return node.getChild(codePoint);
+    }
+
+    @Override
+    V getValue(Node<V> node) {
+      return node.value;
+    }
+  }
+
+  private static final class Node<V> {
+    private static final int[] NO_KEYS = new int[0];
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private static final Node<?> EMPTY = new Node<>(NO_KEYS,new Node[0],null);
+
+    private final int[] keys;
+    private final Node<V>[] children;
+    private final V value;
+    // Precomputed like LinkedTrie; since the nodes are immutable and built
+    //   from the bottom up, removing also recomputes it along the path.
+    private final V completion;
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V> empty() {
+      return (Node<V>)EMPTY;
+    }
+
+    private Node(int[] keys,Node<V>[] children,V value) {
+      this.keys = keys;
+      this.children = children;
+      this.value = value;
+
+      if(value != null) {
+        this.completion = value;
+      }
+      else {
+        this.completion = (keys.length == 1) ? children[0].completion : null;
+      }
+    }
+
+    private int indexOf(int codePoint) {
+      return Arrays.binarySearch(keys,codePoint);
+    }
+
+    private Node<V> getChild(int codePoint) {
+      int index = indexOf(codePoint);
+
+      return (index >= 0) ? children[index] : null;
+    }
+
+    private V getCompletion(V defaultValue) {
+      return (completion != null) ? completion : defaultValue;
+    }
+
+    private V findExact(String key) {
+      final int length = key.length();
+      Node<V> node = this;
+      int codePoint;
+
+      for(int i = 0; i < length && node != null; i += Character.charCount(codePoint)) {
+        codePoint = key.codePointAt(i);
+        node = node.getChild(codePoint);
+      }
+
+      return (node != null) ? node.value : null;
+    }
+
+    /**
+     * Returns a copy with the value stored at key[index..], or this if it already has a value.
+     */
+    private Node<V> with(String key,int index,V newValue) {
+      if(index >= key.length()) {
+        return (value != null) ? this : new Node<>(keys,children,newValue);
+      }
+
+      final int codePoint = key.codePointAt(index);
+      final int childIndex = indexOf(codePoint);
+      final Node<V> child = (childIndex >= 0) ? children[childIndex] : empty();
+      final Node<V> newChild = child.with(key,index + Character.charCount(codePoint),newValue);
+
+      if(newChild == child) {
+        return this;
+      }
+      if(childIndex >= 0) {
+        Node<V>[] newChildren = children.clone();
+        newChildren[childIndex] = newChild;
+
+        return new Node<>(keys,newChildren,value);
+      }
+
+      // Insert, keeping the keys sorted.
+      final int insertIndex = -(childIndex + 1);
+      final int[] newKeys = new int[keys.length + 1];
+      final Node<V>[] newChildren = Arrays.copyOf(children,children.length + 1);
+
+      System.arraycopy(keys,0,newKeys,0,insertIndex);
+      System.arraycopy(keys,insertIndex,newKeys,insertIndex + 1,keys.length - insertIndex);
+      System.arraycopy(children,insertIndex,newChildren,insertIndex + 1,children.length - insertIndex);
+      newKeys[insertIndex] = codePoint;
+      newChildren[insertIndex] = newChild;
+
+      return new Node<>(newKeys,newChildren,value);
+    }
+
+    /**
+     * Returns a copy without the value at key[index..], this if not found, or null if now empty.
+     */
+    private Node<V> without(String key,int index) {
+      if(index >= key.length()) {
+        if(value == null) {
+          return this;
+        }
+
+        return (keys.length == 0) ? null : new Node<>(keys,children,null);
+      }
+
+      final int codePoint = key.codePointAt(index);
+      final int childIndex = indexOf(codePoint);
+
+      if(childIndex < 0) {
+        return this;
+      }
+
+      final Node<V> child = children[childIndex];
+      final Node<V> newChild = child.without(key,index + Character.charCount(codePoint));
+
+      if(newChild == child) {
+        return this;
+      }
+      if(newChild != null) {
+        Node<V>[] newChildren = children.clone();
+        newChildren[childIndex] = newChild;
+
+        return new Node<>(keys,newChildren,value);
+      }
+      // Prune this node too?
+      if(keys.length == 1 && value == null) {
+        return null;
+      }
+
+      // Remove, keeping the keys sorted.
+      final int[] newKeys = Arrays.copyOf(keys,keys.length - 1);
+      final Node<V>[] newChildren = Arrays.copyOf(children,children.length - 1);
+
+      System.arraycopy(keys,childIndex + 1,newKeys,childIndex,newKeys.length - childIndex);
+      System.arraycopy(children,childIndex + 1,newChildren,childIndex,newChildren.length - childIndex);
+
+      return new Node<>(newKeys,newChildren,value);
+    }
+  }
+}
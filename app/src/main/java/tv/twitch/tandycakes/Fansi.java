@@ -8,17 +8,59 @@ package tv.twitch.tandycakes;
 import tv.twitch.tandycakes.error.ParseException;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
-import java.util.Locale;
-
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <pre>
+ * Fansi can be used by multiple threads (such as chat, input, & UI threads):
+ * - The last parse error is per thread.
+ * - Frames are per thread, so a thread's frame is written all at once.
+ * - The out can be overridden per thread (see setThreadOut()), such as for
+ *   each client of a daemon.
+ * - If startWriter() is used, then all writing goes through a bounded queue
+ *   to a single writer thread, so that producers don't stall on a slow
+ *   terminal, and lines/frames don't interleave.
+ *
+ * However, styles should be stored before sharing it.
+ * </pre>
+ */
 public class Fansi {
-  public static final String RESET = "\u001b[0m";
+  public enum OverflowPolicy {
+    /** Drop the oldest queued text to make room (& count it). */
+    DROP_OLDEST,
+    /**
+     * Merge the text that doesn't fit into 1 overflow chunk, written in order.
+     * If the overflow is full (1M chars), then wait for room, like BLOCK.
+     */
+    COALESCE,
+    /** Wait for room. */
+    BLOCK,
+  }
 
-  private PrintStream out;
-  private boolean isEnabled = true;
-  private final LinkedTrie<String> styles = new LinkedTrie<>();
-  private ParseException lastParseError = null;
+  public static final String RESET = "\u001b[0m";
+  public static final int MAX_STYLE_TEMPLATES = 256;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+  private static final String SPACES = " ".repeat(64);
+  private static final int INIT_FRAME_BUFFER_CAPACITY = 4 * 1024;
+  private static final int MAX_FRAME_BUFFER_CAPACITY = 256 * 1024;
+
+  private volatile PrintStream out;
+  private volatile boolean isEnabled = true;
+  private volatile FansiWriter writer = null;
+  private final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+  // Ignore case & space, so that style names don't need to be normalized.
+  private final LinkedTrie<String> styles = new LinkedTrie<>(true,true,true);
+  private volatile ArrayTrie<String> compiledStyles = null;
+  private final ThreadLocal<ParseException> lastParseError = new ThreadLocal<>();
+  private volatile boolean isMinimalSgr = false;
+  // Lock-free, since style() is called by many producers at once (see getStyleTemplate()).
+  private final Map<String,StyleTemplate> styleTemplates = new ConcurrentHashMap<>();
 
   public Fansi() {
     this(System.out);
@@ -72,11 +114,67 @@ public class Fansi {
   }
 
   public String buildKey(String name) {
-    return name.replaceAll("\\s+","").toLowerCase(Locale.ROOT);
+    return styles.buildKey(name);
   }
 
   protected void storeStyleKey(String key,String style) {
-    styles.add(key,style);
+    synchronized(styles) {
+      styles.add(key,style);
+      compiledStyles = null; // Recompile on next lookup.
+    }
+
+    clearStyleTemplates();
+  }
+
+  /**
+   * <pre>
+   * Styles are rarely stored after construction, so lookups use a compiled
+   * copy of the styles, which is only rebuilt after storing a new style.
+   * </pre>
+   */
+  protected ArrayTrie<String> getCompiledStyles() {
+    ArrayTrie<String> compiled = compiledStyles;
+
+    if(compiled == null) {
+      synchronized(styles) {
+        compiled = styles.compile();
+        compiledStyles = compiled;
+      }
+    }
+
+    return compiled;
+  }
+
+  protected String findStyleKey(String key) {
+    return getCompiledStyles().find(key);
+  }
+
+  /**
+   * <pre>
+   * Finds the style (escape sequences) of the style names/aliases, the same
+   * as in style(), such as "bold/red" or "cmd".
+   *
+   * Returns null if any of the names are invalid.
+   * </pre>
+   */
+  public String findStyles(String styleNames) {
+    StringBuilder stylesBuffer = new StringBuilder();
+
+    for(String styleName: styleNames.split("/")) {
+      if(styleName.isBlank()) {
+        continue;
+      }
+
+      String style = findStyleKey(buildKey(styleName));
+
+      if(style == null) {
+        return null;
+      }
+
+      stylesBuffer.append(style);
+    }
+
+    return stylesBuffer.toString();
   }
 
   public void storeStyle(String name,String style) {
@@ -98,7 +196,7 @@ public class Fansi {
 
     for(String styleName: styleNames.split("/")) {
       String styleKey = buildKey(styleName);
-      String style = styles.find(styleKey);
+      String style = findStyleKey(styleKey);
 
       if(style == null) {
         throw new IllegalArgumentException(Formatter.format(
@@ -135,10 +233,106 @@ public class Fansi {
       return Formatter.format(format,args);
     }
 
+    StyleTemplate template = getStyleTemplate(format);
+
+    if(template.parseError != null) {
+      lastParseError.set(new ParseException(template.parseError));
+    }
+
+    // An arg with its own escape sequences (such as a reset from another
+    //   style()) makes the tracked state stale, so use full resets instead.
+    Formatter.Template formatTemplate = (template.fullTemplate != null && hasEscape(args))
+        ? template.fullTemplate : template.template;
+
+    // Unlike Formatter, the styles still need to be applied without args.
+    return formatTemplate.renderAll(args);
+  }
+
+  private static boolean hasEscape(Object[] args) {
+    if(args == null) {
+      return false;
+    }
+
+    for(Object arg: args) {
+      if(arg != null && String.valueOf(arg).indexOf('\u001b') >= 0) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * <pre>
+   * Gets the cached StyleTemplate of the format, else compiles it.
+   *
+   * The output of style() only depends on the format (and the styles),
+   * since the args are just put into the slots, so the parsing is only done
+   * once per format, which are usually the same few (help, prompts, etc.).
+   *
+   * Like Formatter.getTemplate(), the cache is bounded by simply not adding
+   * any more once it's full, so that a hit never takes a lock.
+   * Worst case, 2 threads compile the same one.
+   * </pre>
+   */
+  protected StyleTemplate getStyleTemplate(String format) {
+    StyleTemplate template = styleTemplates.get(format);
+
+    if(template == null) {
+      template = compileStyle(format);
+
+      if(styleTemplates.size() < MAX_STYLE_TEMPLATES) {
+        styleTemplates.putIfAbsent(format,template);
+      }
+    }
+
+    return template;
+  }
+
+  /**
+   * <pre>
+   * Parses the format of style() into the literal text (with the style
+   * escape sequences) between each arg "{}" slot.
+   * </pre>
+   */
+  protected StyleTemplate compileStyle(String format) {
+    // Can't track the state if there are raw escape sequences in the format.
+    if(isMinimalSgr && format.indexOf('\u001b') < 0) {
+      StyleTemplate template = compileStyle(format,true);
+
+      if(template != null) {
+        if(template.template.getSlotCount() > 0) {
+          // For args with escape sequences (see style()).
+          template = new StyleTemplate(template.template,compileStyle(format,false).template
+              ,template.parseError);
+        }
+
+        return template;
+      }
+    }
+
+    return compileStyle(format,false);
+  }
+
+  /**
+   * <pre>
+   * If isMinimalSgr, then this tracks the effective attributes (SgrState),
+   * so that opening & closing a block only emits the codes that change,
+   * instead of RESET and all the outer blocks' styles again.
+   * An unbalanced "}" still emits RESET, since it's used to reset the
+   * styles from an earlier call, such as "{bold/yellow".
+   *
+   * Returns null if isMinimalSgr and a style can't be tracked (such as a
+   * stored style with underline), so that it can fall back.
+   * </pre>
+   */
+  private StyleTemplate compileStyle(String format,boolean isMinimalSgr) {
     final int length = format.length();
-    int argIndex = 0;
+    List<String> literals = new ArrayList<>();
     StringBuilder buffer = new StringBuilder((int)(length * 1.5));
     Deque<String> styleBlocks = new LinkedList<>();
+    String parseError = null;
+    SgrState sgrState = SgrState.UNKNOWN_STATE;
 
     for(int i = 0; i < length; ) {
       final int codePoint = format.codePointAt(i);
@@ -158,22 +352,15 @@ public class Fansi {
           }
           // Arg?
           else if(codePoint2 == '}') {
-            if(args != null && argIndex < args.length) {
-              buffer.append(args[argIndex]);
-              ++argIndex;
-            }
-            else {
-              // Append "{}" in case this needs to be used again in another formatter.
-              buffer.append("{}");
-            }
-
+            literals.add(buffer.toString());
+            buffer.setLength(0);
             i += 2; // Processed "{}".
             continue;
           }
 
           // Read all the styles.
-          StringBuilder styleBuffer = new StringBuilder();
           StringBuilder stylesBuffer = new StringBuilder();
+          int styleStart = j;
 
           for(i = j; i < length; ) {
             final int codePoint3 = format.codePointAt(i);
@@ -185,32 +372,30 @@ public class Fansi {
 
             // End of format string? For: "{yellow".
             if(!isEndOfStyles && i >= (length - 1)) {
-              styleBuffer.appendCodePoint(codePoint3);
               i += charCount3; // Eat the style name's last char.
 
               isEndOfStyles = true;
             }
 
             if(codePoint3 == '/' || isEndOfStyles) {
-              String styleName = styleBuffer.toString();
-              String styleKey = buildKey(styleName);
-
+              // The style name is format[styleStart,i), which is looked up
+              //   in place (the styles ignore case & space).
               // Allow empty names for future placeholders: "This is { some } text."
-              if(!styleKey.isEmpty()) {
-                String style = styles.find(styleKey);
+              if(styleStart < i) {
+                String style = getCompiledStyles().find(format,styleStart,i);
 
                 if(style == null) {
-                  lastParseError = new ParseException(Formatter.format(
+                  String styleName = format.substring(styleStart,i);
+
+                  parseError = Formatter.format(
                       "Invalid style name/alias '{}' with key '{}' at index {}.",
-                      styleName,styleKey,i
-                  ));
+                      styleName,buildKey(styleName),i
+                  );
                 } else {
                   stylesBuffer.append(style);
                 }
               }
 
-              styleBuffer.setLength(0); // Reset for the next style.
-
               if(isEndOfStyles) {
                 if(isSpace) {
                   i += charCount3; // Eat the space.
@@ -220,17 +405,30 @@ public class Fansi {
               }
               else {
                 i += charCount3; // Eat the separator.
+                styleStart = i; // Next style.
                 continue;
               }
             }
 
-            styleBuffer.appendCodePoint(codePoint3);
             i += charCount3;
           }
 
           String stylesStr = stylesBuffer.toString();
 
-          buffer.append(stylesStr);
+          if(isMinimalSgr) {
+            SgrState nextState = sgrState.apply(stylesStr);
+
+            if(nextState == null) {
+              return null;
+            }
+
+            buffer.append(sgrState.transitionTo(nextState));
+            sgrState = nextState;
+          }
+          else {
+            buffer.append(stylesStr);
+          }
+
           // Add, even if empty, since have to remove later when hit "}".
           styleBlocks.addLast(stylesStr);
 
@@ -266,6 +464,27 @@ public class Fansi {
           continue;
         }
 
+        if(isMinimalSgr) {
+          if(styleBlocks.pollLast() == null) {
+            buffer.append(RESET);
+            sgrState = SgrState.RESET_STATE;
+          }
+          else {
+            // Same as the RESET & outer blocks' styles below.
+            SgrState outerState = SgrState.RESET_STATE;
+
+            for(String styleBlock: styleBlocks) {
+              outerState = outerState.apply(styleBlock);
+            }
+
+            buffer.append(sgrState.transitionTo(outerState));
+            sgrState = outerState;
+          }
+
+          ++i; // Processed "}".
+          continue;
+        }
+
         // Remove the last style block and reset the styles in the string.
         styleBlocks.pollLast();
         buffer.append(RESET);
@@ -283,63 +502,256 @@ public class Fansi {
       i += charCount;
     }
 
-    return buffer.toString();
+    literals.add(buffer.toString());
+
+    return new StyleTemplate(Formatter.Template.of(format,literals.toArray(new String[0])),null,parseError);
   }
 
   public void srint(String format,Object... args) {
-    out.print(style(format,args));
+    write(style(format,args));
   }
 
   public void srintln(String format,Object... args) {
-    out.println(style(format,args));
+    writeln(style(format,args));
   }
 
   public void srintln() {
-    out.println();
+    writeln("");
   }
 
   public void srintf(String format,Object... args) {
-    out.printf(style(format),args);
+    write(String.format(style(format),args));
   }
 
   public void srintfn(String format,Object... args) {
     srintf(format,args);
-    out.println();
+    writeln("");
   }
 
   public void print(String format) {
-    out.print(format);
+    write(format);
   }
 
   public void print(String format,Object... args) {
-    out.print(Formatter.format(format,args));
+    write(Formatter.format(format,args));
   }
 
   public void println(String format) {
-    out.println(format);
+    writeln(format);
   }
 
   public void println(String format,Object... args) {
-    out.println(Formatter.format(format,args));
+    writeln(Formatter.format(format,args));
   }
 
   public void println() {
-    out.println();
+    writeln("");
   }
 
   public void printf(String format,Object... args) {
-    out.printf(format,args);
+    write(String.format(format,args));
   }
 
   public void printfn(String format,Object... args) {
     printf(format,args);
-    out.println();
+    writeln("");
+  }
+
+  /**
+   * <pre>
+   * Prints count spaces, such as for aligning columns.
+   * </pre>
+   */
+  public void pad(int count) {
+    final Frame frame = frames.get();
+
+    while(count > 0) {
+      final int spaceCount = Math.min(count,SPACES.length());
+
+      if(frame.buffer != null) {
+        frame.buffer.append(SPACES,0,spaceCount);
+      }
+      else {
+        write(SPACES.substring(0,spaceCount));
+      }
+
+      count -= spaceCount;
+    }
+  }
+
+  /**
+   * <pre>
+   * Starts a frame, such as a help screen or a burst of chat lines, where
+   * all printing is built in 1 buffer, which endFrame() then writes all at
+   * once, instead of many tiny writes (& flushes).
+   *
+   * Frames are per thread, and can be nested; only the outermost endFrame()
+   * writes.
+   *
+   * Example:
+   *   fansi.beginFrame();
+   *
+   *   try {
+   *     fansi.srintln("{title USAGE }");
+   *     // ...
+   *   }
+   *   finally {
+   *     fansi.endFrame();
+   *   }
+   * </pre>
+   */
+  public void beginFrame() {
+    final Frame frame = frames.get();
+
+    if(frame.depth++ == 0) {
+      StringBuilder buffer = frame.reusedBuffer;
+
+      if(buffer == null || buffer.capacity() > MAX_FRAME_BUFFER_CAPACITY) {
+        buffer = new StringBuilder(INIT_FRAME_BUFFER_CAPACITY);
+        frame.reusedBuffer = buffer;
+      }
+
+      frame.buffer = buffer;
+    }
+  }
+
+  public void endFrame() {
+    final Frame frame = frames.get();
+
+    if(frame.depth <= 0) {
+      throw new IllegalStateException("No frame to end.");
+    }
+    if(--frame.depth > 0) {
+      return;
+    }
+
+    final StringBuilder buffer = frame.buffer;
+    frame.buffer = null;
+
+    if(buffer.length() > 0) {
+      final FansiWriter writer = (frame.out == null) ? this.writer : null;
+
+      // If the writer was stopped in the meantime, then just write directly.
+      if(writer == null || !writer.write(buffer.toString())) {
+        final PrintStream out = (frame.out != null) ? frame.out : this.out;
+
+        // Through the stream (as 1 write), so that it's encoded the same as
+        //   text that isn't in a frame.
+        out.append(buffer);
+        out.flush();
+      }
+    }
+
+    buffer.setLength(0);
+  }
+
+  private void write(String str) {
+    final Frame frame = frames.get();
+
+    if(frame.buffer != null) {
+      frame.buffer.append(str);
+      return;
+    }
+    if(frame.out != null) {
+      frame.out.print(str);
+      return;
+    }
+
+    final FansiWriter writer = this.writer;
+
+    // If the writer was stopped in the meantime, then just write directly.
+    if(writer == null || !writer.write(String.valueOf(str))) {
+      out.print(str);
+    }
+  }
+
+  private void writeln(String str) {
+    final Frame frame = frames.get();
+
+    if(frame.buffer != null) {
+      frame.buffer.append(str).append(LINE_SEPARATOR);
+      return;
+    }
+    if(frame.out != null) {
+      frame.out.println(str);
+      return;
+    }
+
+    final FansiWriter writer = this.writer;
+
+    // As 1 chunk, so that the line isn't split.
+    if(writer == null || !writer.write(str + LINE_SEPARATOR)) {
+      out.println(str);
+    }
+  }
+
+  /**
+   * <pre>
+   * Starts concurrent mode, where all writing (outside of frames) is queued
+   * to a single writer thread, which writes it in batches.
+   *
+   * The capacity is the max number of queued chunks (lines, frames, etc.),
+   * and the policy is what to do when the queue is full.
+   *
+   * Anything written without a newline (srint(), print(), etc.) is its own
+   * chunk, so use a frame to keep it together with the rest of the line.
+   * </pre>
+   */
+  public synchronized void startWriter(int capacity,OverflowPolicy policy) {
+    if(writer != null) {
+      throw new IllegalStateException("Writer already started.");
+    }
+
+    writer = new FansiWriter(this,capacity,policy);
+  }
+
+  /**
+   * <pre>
+   * Writes everything left, stops the writer thread, and goes back to
+   * writing directly.
+   * </pre>
+   */
+  public synchronized void stopWriter() {
+    final FansiWriter writer = this.writer;
+
+    if(writer != null) {
+      // Anyone still using it writes directly once it's stopped.
+      writer.stop();
+      this.writer = null;
+    }
+  }
+
+  /**
+   * <pre>
+   * The number of chunks dropped by the writer (see OverflowPolicy).
+   * </pre>
+   */
+  public long getDroppedCount() {
+    final FansiWriter writer = this.writer;
+
+    return (writer != null) ? writer.getDroppedCount() : 0;
+  }
+
+  public boolean hasWriter() {
+    return writer != null;
   }
 
   public void setOut(PrintStream out) {
     this.out = out;
   }
 
+  /**
+   * <pre>
+   * Overrides out for only this thread (or null to stop), such as for each
+   * client of a daemon, so that clients' output isn't mixed together.
+   *
+   * This thread's writing then bypasses the writer (if started).
+   * </pre>
+   */
+  public void setThreadOut(PrintStream out) {
+    frames.get().out = out;
+  }
+
   public void enable() {
     this.isEnabled = true;
   }
@@ -352,23 +764,116 @@ public class Fansi {
     this.isEnabled = isEnabled;
   }
 
+  /**
+   * <pre>
+   * If true, then style() only emits the SGR codes that change between
+   * nested blocks (see SgrState), which looks the same, but sends a lot fewer
+   * bytes to the terminal.
+   *
+   * False by default, so that the output bytes of each style stay the same.
+   * If an arg has its own escape sequences, then full resets are used for
+   * that call, since the tracked state would be stale.
+   * </pre>
+   */
+  public void setMinimalSgr(boolean isMinimalSgr) {
+    this.isMinimalSgr = isMinimalSgr;
+    clearStyleTemplates();
+  }
+
+  private void clearStyleTemplates() {
+    styleTemplates.clear();
+  }
+
+  /**
+   * <pre>
+   * Clears this thread's last parse error.
+   * </pre>
+   */
   public void clearLastParseError() {
-    lastParseError = null;
+    lastParseError.remove();
   }
 
   public PrintStream getOut() {
     return out;
   }
 
+  /**
+   * <pre>
+   * Returns this thread's out, or null if not overridden (see
+   * setThreadOut()).
+   * </pre>
+   */
+  public PrintStream getThreadOut() {
+    return frames.get().out;
+  }
+
+  /**
+   * <pre>
+   * Returns true if this thread is in a frame.
+   * </pre>
+   */
+  public boolean isInFrame() {
+    return frames.get().buffer != null;
+  }
+
   public boolean isEnabled() {
     return isEnabled;
   }
 
+  public boolean isMinimalSgr() {
+    return isMinimalSgr;
+  }
+
   public boolean isDisabled() {
     return !isEnabled;
   }
 
+  /**
+   * <pre>
+   * Returns this thread's last parse error of style().
+   * </pre>
+   */
   public ParseException getLastParseError() {
-    return lastParseError;
+    return lastParseError.get();
+  }
+
+  private static final class Frame {
+    private StringBuilder buffer = null; // Null if not in a frame.
+    private StringBuilder reusedBuffer = null; // Reused for each frame.
+    private int depth = 0;
+    private PrintStream out = null; // Null if not overridden for this thread.
+  }
+
+  /**
+   * <pre>
+   * A compiled format of style(), with the last parse error (if any) to set
+   * each time it's used.
+   *
+   * If the template is minimal (see setMinimalSgr()) & has arg slots, then
+   * fullTemplate is the same format with full resets, else null.
+   * </pre>
+   */
+  protected static final class StyleTemplate {
+    private final Formatter.Template template;
+    private final Formatter.Template fullTemplate;
+    private final String parseError;
+
+    private StyleTemplate(Formatter.Template template,Formatter.Template fullTemplate,String parseError) {
+      this.template = template;
+      this.fullTemplate = fullTemplate;
+      this.parseError = parseError;
+    }
+
+    public Formatter.Template getTemplate() {
+      return template;
+    }
+
+    public Formatter.Template getFullTemplate() {
+      return fullTemplate;
+    }
+
+    public String getParseError() {
+      return parseError;
+    }
   }
 }
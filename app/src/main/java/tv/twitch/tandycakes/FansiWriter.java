@@ -0,0 +1,287 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * The background writer of a Fansi in concurrent mode (see
+ * Fansi.startWriter()).
+ *
+ * Producers (any thread) queue whole chunks of text, such as a line or a
+ * frame, into a bounded queue, and a single writer thread drains it in
+ * batches, encoding & writing each batch at once. So chunks never
+ * interleave, and a slow terminal only stalls the writer thread (unless
+ * the policy is BLOCK).
+ *
+ * Once stopped, write() returns false (so the caller writes directly), and
+ * the writer thread only ends after every write() that was already in
+ * progress has queued its chunk, so nothing is lost.
+ * </pre>
+ */
+final class FansiWriter {
+  private static final int MAX_BATCH_SIZE = 256;
+  // For COALESCE, the max chars of overflow before producers wait for room,
+  //   so that a stalled writer can't grow the heap without bound.
+  static final int MAX_OVERFLOW_LENGTH = 1024 * 1024;
+
+  private final Fansi fansi;
+  private final BlockingQueue<String> queue;
+  private final Fansi.OverflowPolicy policy;
+  private final Thread thread;
+  private final AtomicLong droppedCount = new AtomicLong();
+  // The number of write()s in progress, which the writer thread waits for
+  //   after being stopped.
+  private final AtomicInteger activeWriteCount = new AtomicInteger();
+  private volatile boolean isStopped = false;
+
+  // For COALESCE: chunks that didn't fit, which are written after the queue
+  //   is empty, to keep the order. Guarded by the lock of this.
+  private final StringBuilder overflow = new StringBuilder();
+
+  // Only used by the writer thread.
+  private final List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+  private final StringBuilder batchBuffer = new StringBuilder(8 * 1024);
+
+  FansiWriter(Fansi fansi,int capacity,Fansi.OverflowPolicy policy) {
+    if(capacity <= 0) {
+      throw new IllegalArgumentException(Formatter.format("Invalid capacity: {}.",capacity));
+    }
+
+    this.fansi = fansi;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.policy = policy;
+
+    thread = new Thread(this::run,"twandy-fansi-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * <pre>
+   * Returns false if stopped, so the text wasn't queued.
+   * </pre>
+   */
+  boolean write(String text) {
+    // Before checking isStopped, so that stop() can't miss this (see run()).
+    activeWriteCount.incrementAndGet();
+
+    try {
+      if(isStopped) {
+        return false;
+      }
+      if(!text.isEmpty()) {
+        queue(text);
+      }
+
+      return true;
+    }
+    finally {
+      activeWriteCount.decrementAndGet();
+    }
+  }
+
+  private void queue(String text) {
+    switch(policy) {
+      case DROP_OLDEST:
+        while(!queue.offer(text)) {
+          if(queue.poll() != null) {
+            droppedCount.incrementAndGet();
+          }
+        }
+        break;
+
+      case COALESCE:
+        coalesce(text);
+        break;
+
+      case BLOCK:
+      default:
+        try {
+          queue.put(text);
+        }
+        catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          droppedCount.incrementAndGet();
+        }
+        break;
+    }
+  }
+
+  /**
+   * <pre>
+   * If the overflow is full (MAX_OVERFLOW_LENGTH), then this falls back to
+   * blocking until the writer takes it, instead of dropping text, since
+   * COALESCE keeps everything in order.
+   *
+   * A chunk bigger than the max is still added if the overflow is empty.
+   * </pre>
+   */
+  private synchronized void coalesce(String text) {
+    // Once there's overflow, everything must go after it to keep the order.
+    if(overflow.length() == 0 && queue.offer(text)) {
+      return;
+    }
+
+    while(!isStopped && overflow.length() > 0
+        && (overflow.length() + text.length()) > MAX_OVERFLOW_LENGTH) {
+      try {
+        wait();
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        droppedCount.incrementAndGet();
+        return;
+      }
+    }
+
+    overflow.append(text);
+  }
+
+  /**
+   * <pre>
+   * Keeps going after being stopped until there are no write()s in
+   * progress, since any new ones will see isStopped & not queue anything,
+   * so then the last writeAll() really is the last.
+   * </pre>
+   */
+  private void run() {
+    while(!isStopped || activeWriteCount.get() > 0) {
+      try {
+        String text = queue.poll(100,TimeUnit.MILLISECONDS);
+
+        if(text != null) {
+          batch.add(text);
+          writeBatch();
+        }
+        else {
+          writeOverflow();
+        }
+      }
+      catch(InterruptedException e) {
+        // Stopping, so check the loop again.
+      }
+    }
+
+    // Clear the interrupt of stop(), which isn't needed anymore.
+    Thread.interrupted();
+    writeAll();
+  }
+
+  /**
+   * <pre>
+   * Writes everything left: the queue, & then the overflow.
+   * </pre>
+   */
+  private void writeAll() {
+    while(!queue.isEmpty()) {
+      queue.drainTo(batch,MAX_BATCH_SIZE);
+      writeBatch();
+    }
+
+    writeOverflow();
+  }
+
+  /**
+   * <pre>
+   * Writes the batch, plus whatever else is queued (up to MAX_BATCH_SIZE).
+   * </pre>
+   */
+  private void writeBatch() {
+    queue.drainTo(batch,MAX_BATCH_SIZE - batch.size());
+    batchBuffer.setLength(0);
+
+    for(String text: batch) {
+      batchBuffer.append(text);
+    }
+
+    batch.clear();
+    writeOut(batchBuffer);
+
+    if(queue.isEmpty()) {
+      writeOverflow();
+    }
+
+    // Don't keep a huge buffer around forever because of 1 huge batch.
+    if(batchBuffer.capacity() > (256 * 1024)) {
+      batchBuffer.setLength(0);
+      batchBuffer.trimToSize();
+    }
+  }
+
+  private void writeOverflow() {
+    String text;
+
+    synchronized(this) {
+      // Only after the queue is empty, as the overflow came after it.
+      if(overflow.length() == 0 || !queue.isEmpty()) {
+        return;
+      }
+
+      text = overflow.toString();
+      overflow.setLength(0);
+
+      if(overflow.capacity() > (256 * 1024)) {
+        overflow.trimToSize();
+      }
+
+      // Wake up any producers waiting for room.
+      notifyAll();
+    }
+
+    writeOut(text);
+  }
+
+  private void writeOut(CharSequence text) {
+    if(text.length() == 0) {
+      return;
+    }
+
+    // Through the stream, so that it's encoded with the stream's charset.
+    final PrintStream out = fansi.getOut();
+
+    out.append(text);
+    out.flush();
+  }
+
+  /**
+   * <pre>
+   * Stops the writer thread, which writes everything left before it ends
+   * (see run()).
+   *
+   * If the writer thread doesn't end in time (such as if it's stuck on a
+   * slow terminal), then it's left to finish writing on its own.
+   * </pre>
+   */
+  void stop() {
+    isStopped = true;
+    thread.interrupt();
+
+    synchronized(this) {
+      // Don't leave producers waiting for room (see coalesce()).
+      notifyAll();
+    }
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  long getDroppedCount() {
+    return droppedCount.get();
+  }
+}
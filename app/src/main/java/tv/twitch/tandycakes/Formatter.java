@@ -5,7 +5,24 @@
 
 package tv.twitch.tandycakes;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Formatter {
+  public static final int MAX_CACHED_TEMPLATES = 512;
+  public static final int MAX_CACHED_FORMAT_LENGTH = 1024;
+
+  private static final int INIT_LOCAL_BUFFER_CAPACITY = 256;
+  private static final int MAX_LOCAL_BUFFER_CAPACITY = 8 * 1024;
+  private static final ThreadLocal<StringBuilder> LOCAL_BUFFER = ThreadLocal.withInitial(
+      () -> new StringBuilder(INIT_LOCAL_BUFFER_CAPACITY));
+
+  private static final Template EMPTY_TEMPLATE = new Template("",new String[] {""});
+  private static final Map<String,Template> TEMPLATE_CACHE = new ConcurrentHashMap<>();
+
   private Formatter() {
     throw new UnsupportedOperationException("Not allowed to construct.");
   }
@@ -40,9 +57,92 @@ public class Formatter {
       return format;
     }
 
+    return getTemplate(format).render(args);
+  }
+
+  /**
+   * <pre>
+   * Same as format(), but appends into the buffer instead, such as
+   * localBuffer() or a buffer owned by the caller, so that there's no
+   * garbage besides the args' toString().
+   *
+   * The StringBuilder overload is just the fast path (no IOException) of the
+   * Appendable one. CharSequence args are appended as-is, without toString().
+   *
+   * Like format(), (buffer,format,null) appends the format as-is.
+   * </pre>
+   */
+  public static StringBuilder formatTo(StringBuilder buffer,String format,Object... args) {
+    return (format != null) ? getTemplate(format).renderTo(buffer,args) : buffer;
+  }
+
+  public static Appendable formatTo(Appendable out,String format,Object... args) throws IOException {
+    return (format != null) ? getTemplate(format).renderTo(out,args) : out;
+  }
+
+  /**
+   * <pre>
+   * These fixed-arity overloads skip the varargs array and boxing.
+   *
+   * Only primitives, so that a null arg can't be ambiguous with Object[].
+   * </pre>
+   */
+  public static StringBuilder formatTo(StringBuilder buffer,String format,int arg) {
+    return (format != null) ? getTemplate(format).renderTo(buffer,arg) : buffer;
+  }
+
+  public static StringBuilder formatTo(StringBuilder buffer,String format,long arg) {
+    return (format != null) ? getTemplate(format).renderTo(buffer,arg) : buffer;
+  }
+
+  public static StringBuilder formatTo(StringBuilder buffer,String format,double arg) {
+    return (format != null) ? getTemplate(format).renderTo(buffer,arg) : buffer;
+  }
+
+  /**
+   * <pre>
+   * Returns this thread's reusable buffer, emptied, for formatTo().
+   *
+   * It must not be kept or passed to another thread, and must be done with
+   * before calling localBuffer() again (so not while formatting an arg).
+   *
+   * Example:
+   *   StringBuilder buffer = Formatter.localBuffer();
+   *   Formatter.formatTo(buffer,"Votes: {}",votes);
+   *   writer.append(buffer);
+   * </pre>
+   */
+  public static StringBuilder localBuffer() {
+    StringBuilder buffer = LOCAL_BUFFER.get();
+
+    // Don't keep a huge buffer around forever because of 1 huge message.
+    if(buffer.capacity() > MAX_LOCAL_BUFFER_CAPACITY) {
+      buffer = new StringBuilder(INIT_LOCAL_BUFFER_CAPACITY);
+      LOCAL_BUFFER.set(buffer);
+    }
+    else {
+      buffer.setLength(0);
+    }
+
+    return buffer;
+  }
+
+  /**
+   * <pre>
+   * Compiles the format into an immutable Template, for formatting the same
+   * format many times, such as for logging and chat replies.
+   *
+   * Template.render() has the exact same output as format().
+   * </pre>
+   */
+  public static Template compile(String format) {
+    if(format == null || format.isEmpty()) {
+      return EMPTY_TEMPLATE;
+    }
+
     final int length = format.length();
-    int argIndex = 0;
-    StringBuilder buffer = new StringBuilder(length * 2);
+    List<String> literals = new ArrayList<>();
+    StringBuilder literal = new StringBuilder(length);
 
     for(int i = 0; i < length; ) {
       final int codePoint = format.codePointAt(i);
@@ -55,31 +155,270 @@ public class Formatter {
 
           // Escaped?
           if(codePoint2 == '{') {
-            buffer.append('{');
+            literal.append('{');
             i += 2; // Processed "{{".
             continue;
           }
           // Arg?
           else if(codePoint2 == '}') {
-            if(argIndex < args.length) {
-              buffer.append(args[argIndex]);
-              ++argIndex;
-            }
-            else {
-              // Append "{}" in case this needs to be used again in another formatter.
-              buffer.append("{}");
-            }
-
+            literals.add(literal.toString());
+            literal.setLength(0);
             i += 2; // Processed "{}".
             continue;
           }
         }
       }
 
-      buffer.appendCodePoint(codePoint);
+      literal.appendCodePoint(codePoint);
       i += Character.charCount(codePoint);
     }
 
-    return buffer.toString();
+    literals.add(literal.toString());
+
+    return Template.of(format,literals.toArray(new String[0]));
+  }
+
+  /**
+   * <pre>
+   * Gets the cached Template of the format, else compiles it.
+   *
+   * The cache is bounded by simply not adding any more once it's full (and
+   * long formats aren't cached), since the formats used over & over again
+   * are usually constants that are seen early on.
+   * </pre>
+   */
+  public static Template getTemplate(String format) {
+    if(format == null || format.isEmpty()) {
+      return EMPTY_TEMPLATE;
+    }
+
+    Template template = TEMPLATE_CACHE.get(format);
+
+    if(template == null) {
+      template = compile(format);
+
+      if(format.length() <= MAX_CACHED_FORMAT_LENGTH && TEMPLATE_CACHE.size() < MAX_CACHED_TEMPLATES) {
+        TEMPLATE_CACHE.putIfAbsent(format,template);
+      }
+    }
+
+    return template;
+  }
+
+  /**
+   * <pre>
+   * Empties the cache, such as for tests that need to know what's in it.
+   * </pre>
+   */
+  static void clearTemplateCache() {
+    TEMPLATE_CACHE.clear();
+  }
+
+  /**
+   * <pre>
+   * A compiled format, with the literal segments (with "{{" already
+   * unescaped) between each "{}" slot.
+   *
+   * Immutable and thread-safe.
+   * </pre>
+   */
+  public static final class Template {
+    private final String format;
+    // There's always 1 more literal than slots (the literal before each slot + the last one).
+    private final String[] literals;
+    private final int slotCount;
+    private final int literalLength;
+
+    /**
+     * <pre>
+     * For other compilers of formats, such as Fansi.
+     * </pre>
+     */
+    static Template of(String format,String[] literals) {
+      return new Template(format,literals);
+    }
+
+    private Template(String format,String[] literals) {
+      this.format = format;
+      this.literals = literals;
+      this.slotCount = literals.length - 1;
+
+      int literalLength = 0;
+
+      for(String literal: literals) {
+        literalLength += literal.length();
+      }
+
+      this.literalLength = literalLength;
+    }
+
+    /**
+     * <pre>
+     * See Formatter.format().
+     *
+     * The output is presized exactly, so only appends into it.
+     * </pre>
+     */
+    public String render(Object... args) {
+      if(args == null || args.length == 0) {
+        return format;
+      }
+
+      return renderAll(args);
+    }
+
+    /**
+     * <pre>
+     * Same as render(), except that the literals are used even if there are
+     * no args (with "{}" for each slot).
+     * </pre>
+     */
+    String renderAll(Object[] args) {
+      if(slotCount == 0) {
+        return literals[0];
+      }
+
+      final int argCount = (args != null) ? Math.min(args.length,slotCount) : 0;
+      final String[] argStrs = new String[argCount];
+      // Append "{}" for each slot without an arg in case this needs to be used
+      //   again in another formatter.
+      int length = literalLength + ((slotCount - argCount) * 2);
+
+      for(int i = 0; i < argCount; ++i) {
+        argStrs[i] = String.valueOf(args[i]);
+        length += argStrs[i].length();
+      }
+
+      StringBuilder buffer = new StringBuilder(length);
+
+      buffer.append(literals[0]);
+
+      for(int i = 0; i < slotCount; ++i) {
+        buffer.append((i < argCount) ? argStrs[i] : "{}");
+        buffer.append(literals[i + 1]);
+      }
+
+      return buffer.toString();
+    }
+
+    /**
+     * <pre>
+     * Same as render(), but appends into the buffer.
+     * </pre>
+     */
+    public StringBuilder renderTo(StringBuilder buffer,Object... args) {
+      if(args == null || args.length == 0) {
+        return buffer.append(format);
+      }
+
+      buffer.append(literals[0]);
+
+      for(int i = 0; i < slotCount; ++i) {
+        if(i < args.length) {
+          final Object arg = args[i];
+
+          if(arg instanceof CharSequence) {
+            buffer.append((CharSequence)arg);
+          }
+          else {
+            buffer.append(arg);
+          }
+        }
+        else {
+          buffer.append("{}");
+        }
+
+        buffer.append(literals[i + 1]);
+      }
+
+      return buffer;
+    }
+
+    public Appendable renderTo(Appendable out,Object... args) throws IOException {
+      if(out instanceof StringBuilder) {
+        return renderTo((StringBuilder)out,args);
+      }
+      if(args == null || args.length == 0) {
+        return out.append(format);
+      }
+
+      out.append(literals[0]);
+
+      for(int i = 0; i < slotCount; ++i) {
+        if(i < args.length) {
+          final Object arg = args[i];
+
+          out.append((arg instanceof CharSequence) ? (CharSequence)arg : String.valueOf(arg));
+        }
+        else {
+          out.append("{}");
+        }
+
+        out.append(literals[i + 1]);
+      }
+
+      return out;
+    }
+
+    public StringBuilder renderTo(StringBuilder buffer,int arg) {
+      buffer.append(literals[0]);
+
+      if(slotCount > 0) {
+        buffer.append(arg);
+        appendRest(buffer);
+      }
+
+      return buffer;
+    }
+
+    public StringBuilder renderTo(StringBuilder buffer,long arg) {
+      buffer.append(literals[0]);
+
+      if(slotCount > 0) {
+        buffer.append(arg);
+        appendRest(buffer);
+      }
+
+      return buffer;
+    }
+
+    public StringBuilder renderTo(StringBuilder buffer,double arg) {
+      buffer.append(literals[0]);
+
+      if(slotCount > 0) {
+        buffer.append(arg);
+        appendRest(buffer);
+      }
+
+      return buffer;
+    }
+
+    /**
+     * <pre>
+     * Appends the rest after the first slot was filled, with "{}" for the
+     * rest of the slots.
+     * </pre>
+     */
+    private void appendRest(StringBuilder buffer) {
+      buffer.append(literals[1]);
+
+      for(int i = 1; i < slotCount; ++i) {
+        buffer.append("{}");
+        buffer.append(literals[i + 1]);
+      }
+    }
+
+    public String getFormat() {
+      return format;
+    }
+
+    public int getSlotCount() {
+      return slotCount;
+    }
+
+    @Override
+    public String toString() {
+      return format;
+    }
   }
 }
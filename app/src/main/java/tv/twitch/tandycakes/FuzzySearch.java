@@ -0,0 +1,121 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <pre>
+ * State for a bounded edit-distance (Levenshtein) search that walks a trie,
+ * used by the tries' findFuzzy().
+ *
+ * This simulates a Levenshtein automaton for the text: each trie depth has
+ * one row of edit distances, computed from its parent's row, so that each
+ * key's prefix is only computed once, and a whole subtree is skipped as soon
+ * as every distance in its row is over the best distance so far.
+ * </pre>
+ */
+final class FuzzySearch<V> {
+  private final int[] text;
+  private int[][] rows;
+  private int bestDistance;
+  private final List<V> matches = new ArrayList<>();
+
+  FuzzySearch(CharSequence text,int maxDistance) {
+    this.text = text.codePoints().toArray();
+    this.rows = new int[Math.max(8,this.text.length + maxDistance + 1)][];
+    this.bestDistance = maxDistance;
+
+    // Distance from the empty key (the root) to each prefix of the text.
+    int[] row = new int[this.text.length + 1];
+
+    for(int i = 0; i < row.length; ++i) {
+      row[i] = i;
+    }
+
+    rows[0] = row;
+  }
+
+  /**
+   * <pre>
+   * Computes the row for the child at (depth + 1) with the code point, and
+   * returns whether its subtree could still have a match.
+   * </pre>
+   */
+  boolean step(int depth,int codePoint) {
+    final int[] prevRow = rows[depth];
+
+    if((depth + 1) >= rows.length) {
+      rows = Arrays.copyOf(rows,rows.length * 2);
+    }
+
+    int[] row = rows[depth + 1];
+
+    if(row == null) {
+      row = new int[text.length + 1];
+      rows[depth + 1] = row;
+    }
+
+    row[0] = prevRow[0] + 1;
+    int minDistance = row[0];
+
+    for(int i = 1; i < row.length; ++i) {
+      final int insertion = row[i - 1] + 1;
+      final int deletion = prevRow[i] + 1;
+      final int substitution = prevRow[i - 1] + ((text[i - 1] == codePoint) ? 0 : 1);
+      final int distance = Math.min(Math.min(insertion,deletion),substitution);
+
+      row[i] = distance;
+
+      if(distance < minDistance) {
+        minDistance = distance;
+      }
+    }
+
+    return minDistance <= bestDistance;
+  }
+
+  /**
+   * <pre>
+   * Offers the value of the key that ends at depth (after step() to it).
+   *
+   * If the key's distance is better than the best so far, then the matches
+   * so far are dropped, and this becomes the best distance, which also
+   * narrows the rest of the search. If it's the same, then the value is
+   * added, unless it's already there (such as an alias of the same value).
+   * </pre>
+   */
+  void offer(int depth,V value) {
+    final int distance = rows[depth][text.length];
+
+    if(distance > bestDistance) {
+      return;
+    }
+    if(distance < bestDistance) {
+      bestDistance = distance;
+      matches.clear();
+    }
+
+    // Aliases share the same value, so only add it once.
+    for(V match: matches) {
+      if(match == value) {
+        return;
+      }
+    }
+
+    matches.add(value);
+  }
+
+  int getDistance() {
+    return matches.isEmpty() ? -1 : bestDistance;
+  }
+
+  List<V> getMatches() {
+    return matches;
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * A LinkedTrie specialized for int values, such as command IDs, option
+ * indexes, and vote slots, so that there's no boxing, and the found values
+ * can index straight into arrays.
+ *
+ * It has the same add/find behavior as LinkedTrie (prefix completion,
+ * allowLonger, ignoreCase, and ignoreSpace).
+ *
+ * Example:
+ *   IntLinkedTrie votes = new IntLinkedTrie();
+ *   votes.add("left",0);
+ *   votes.add("right",1);
+ *
+ *   int slot = votes.find("le",-1);  //=> 0
+ *   if(slot >= 0) { ++tallies[slot]; }
+ * </pre>
+ */
+public class IntLinkedTrie {
+  private static final NodeWalker WALKER = new NodeWalker();
+
+  private final Node rootNode = new Node();
+  private boolean allowLonger = true;
+  private final boolean ignoreCase;
+  private final boolean ignoreSpace;
+
+  public IntLinkedTrie() {
+    this(true);
+  }
+
+  public IntLinkedTrie(boolean allowLonger) {
+    this(allowLonger,false,false);
+  }
+
+  /**
+   * See LinkedTrie(boolean,boolean,boolean).
+   */
+  public IntLinkedTrie(boolean allowLonger,boolean ignoreCase,boolean ignoreSpace) {
+    this.allowLonger = allowLonger;
+    this.ignoreCase = ignoreCase;
+    this.ignoreSpace = ignoreSpace;
+  }
+
+  public void add(CharSequence nameOrAlias,int value) {
+    final String key = buildKey(nameOrAlias);
+
+    if(key.isEmpty()) {
+      throw new IllegalArgumentException("Empty name/alias.");
+    }
+
+    final int length = key.length();
+    // Only the nodes on this path can have a different completion afterwards.
+    final Node[] path = new Node[length + 1];
+    int pathLength = 0;
+    Node node = rootNode;
+    int codePoint;
+
+    for(int i = 0; i < length; i += Character.charCount(codePoint)) {
+      path[pathLength++] = node;
+      codePoint = key.codePointAt(i);
+      node = node.storeChild(codePoint);
+    }
+
+    // Store the actual value, but don't overwrite an existing one.
+    if(node.hasValue) {
+      return;
+    }
+
+    node.value = value;
+    node.hasValue = true;
+    node.updateCompletion();
+
+    while(pathLength > 0) {
+      path[--pathLength].updateCompletion();
+    }
+  }
+
+  public void addAlias(int value,String... aliases) {
+    for(String alias: aliases) {
+      add(alias,value);
+    }
+  }
+
+  public int find(CharSequence partial,int defaultValue) {
+    return find(partial,defaultValue,allowLonger);
+  }
+
+  public int find(CharSequence partial,int defaultValue,boolean allowLonger) {
+    if(partial == null) {
+      return defaultValue;
+    }
+
+    return find(partial,0,partial.length(),defaultValue,allowLonger);
+  }
+
+  public int find(CharSequence text,int start,int end,int defaultValue) {
+    return find(text,start,end,defaultValue,allowLonger);
+  }
+
+  /**
+   * See LinkedTrie.find().
+   */
+  public int find(CharSequence text,int start,int end,int defaultValue,boolean allowLonger) {
+    Node node = WALKER.find(rootNode,text,start,end,allowLonger,ignoreCase,ignoreSpace);
+
+    return (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+  }
+
+  public int findTokens(CharSequence text,int[] values,int defaultValue) {
+    return findTokens(text,0,text.length(),values,defaultValue,allowLonger);
+  }
+
+  /**
+   * See LinkedTrie.findTokens().
+   */
+  public int findTokens(CharSequence text,int start,int end,int[] values,int defaultValue,boolean allowLonger) {
+    return WALKER.findTokens(rootNode,text,start,end,values.length,allowLonger,ignoreCase,(node,index) -> {
+      values[index] = (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+    });
+  }
+
+  /**
+   * See LinkedTrie.buildKey().
+   */
+  public String buildKey(CharSequence nameOrAlias) {
+    return LinkedTrie.buildKey(nameOrAlias,ignoreCase,ignoreSpace);
+  }
+
+  public void setAllowLonger(boolean allowLonger) {
+    this.allowLonger = allowLonger;
+  }
+
+  public boolean isAllowLonger() {
+    return allowLonger;
+  }
+
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isIgnoreSpace() {
+    return ignoreSpace;
+  }
+
+  private static final class NodeWalker extends TrieWalker<Node,Integer> {
+    @Override
+    int getChildCount(Node node) {
+      return node.size;
+    }
+
+    @Override
+    int getKey(Node node,int index) {
+      return node.keys[index];
+    }
+
+    @Override
+    Node getChildAt(Node node,int index) {
+      return node.children[index];
+    }
+
+    @Override
+    Node getChild(Node node,int codePoint) {
+      return node.getChild(codePoint);
+    }
+
+    @Override
+    Integer getValue(Node node) {
+      return node.hasValue ? node.value : null;
+    }
+
+    @Override
+    boolean hasValue(Node node) {
+      return node.hasValue; // Without boxing.
+    }
+  }
+
+  private static final class Node {
+    private static final int[] NO_KEYS = new int[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private int[] keys = NO_KEYS;
+    private Node[] children = NO_CHILDREN;
+    private int size = 0;
+    private int value = 0;
+    private boolean hasValue = false;
+    // See LinkedTrie.Node.
+    private int completion = 0;
+    private boolean hasCompletion = false;
+
+    private Node storeChild(int codePoint) {
+      int index = indexOf(codePoint);
+
+      if(index >= 0) {
+        return children[index];
+      }
+
+      index = -(index + 1); // Insertion point.
+
+      if(size == keys.length) {
+        // Most nodes only have 1 child, so start small.
+        final int capacity = (size < 2) ? (size + 1) : (size + (size >> 1));
+
+        keys = Arrays.copyOf(keys,capacity);
+        children = Arrays.copyOf(children,capacity);
+      }
+
+      // Shift over to keep the keys sorted.
+      System.arraycopy(keys,index,keys,index + 1,size - index);
+      System.arraycopy(children,index,children,index + 1,size - index);
+
+      Node child = new Node();
+
+      keys[index] = codePoint;
+      children[index] = child;
+      ++size;
+
+      return child;
+    }
+
+    private void updateCompletion() {
+      if(hasValue) {
+        completion = value;
+        hasCompletion = true;
+      }
+      else if(size == 1) {
+        completion = children[0].completion;
+        hasCompletion = children[0].hasCompletion;
+      }
+      else {
+        hasCompletion = false;
+      }
+    }
+
+    private int indexOf(int codePoint) {
+      // For a few children, a linear scan beats a binary search.
+      if(size <= 8) {
+        for(int i = 0; i < size; ++i) {
+          final int key = keys[i];
+
+          if(key == codePoint) {
+            return i;
+          }
+          if(key > codePoint) {
+            return -(i + 1);
+          }
+        }
+
+        return -(size + 1);
+      }
+
+      return Arrays.binarySearch(keys,0,size,codePoint);
+    }
+
+    private Node getChild(int codePoint) {
+      int index = indexOf(codePoint);
+
+      return (index >= 0) ? children[index] : null;
+    }
+
+    private int getCompletion(int defaultValue) {
+      return hasCompletion ? completion : defaultValue;
+    }
+  }
+}
@@ -5,21 +5,58 @@
 
 package tv.twitch.tandycakes;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * For efficiency, could add an internal HashMap, but no need.
+ * <pre>
+ * Each node stores its children as sorted code points with a parallel array
+ * of child nodes (binary searched), and stores its value inline, so that
+ * there's no boxing, hash tables, or extra objects per node.
+ * </pre>
  */
 public class LinkedTrie<V> {
-  private final Node rootNode = new Node();
+  private final Node<V> rootNode = new Node<>();
+  private final NodeWalker<V> walker = new NodeWalker<>();
   private boolean allowLonger = true;
+  private final boolean ignoreCase;
+  private final boolean ignoreSpace;
 
   public LinkedTrie() {
+    this(true);
   }
 
   public LinkedTrie(boolean allowLonger) {
+    this(allowLonger,false,false);
+  }
+
+  /**
+   * <pre>
+   * If ignoreCase, then each code point is case folded (simple Unicode case
+   * folding) when adding and finding, so "BtWhite" finds "btwhite".
+   *
+   * If ignoreSpace, then whitespace is skipped when adding and finding,
+   * so "bt white" finds "btwhite".
+   *
+   * This is done per code point, so callers don't need to build a new
+   * normalized string for each find.
+   * </pre>
+   */
+  public LinkedTrie(boolean allowLonger,boolean ignoreCase,boolean ignoreSpace) {
     this.allowLonger = allowLonger;
+    this.ignoreCase = ignoreCase;
+    this.ignoreSpace = ignoreSpace;
   }
 
   public void add(V value) {
@@ -31,6 +68,8 @@ public class LinkedTrie<V> {
   }
 
   public void add(String nameOrAlias,V value) {
+    nameOrAlias = buildKey(nameOrAlias);
+
     if(nameOrAlias.isEmpty()) {
       throw new IllegalArgumentException("Empty name/alias.");
     }
@@ -39,20 +78,33 @@ public class LinkedTrie<V> {
     }
 
     final int length = nameOrAlias.length();
-    Node parent = rootNode;
+    // Only the nodes on this path can have a different completion afterwards.
+    @SuppressWarnings({"unchecked","rawtypes"})
+    final Node<V>[] path = new Node[length + 1];
+    int pathLength = 0;
+    Node<V> node = rootNode;
+    int codePoint;
 
-    for(int i = 0; ; ) {
-      final int codePoint = nameOrAlias.codePointAt(i);
-      i += Character.charCount(codePoint);
+    for(int i = 0; i < length; i += Character.charCount(codePoint)) {
+      path[pathLength++] = node;
+      codePoint = nameOrAlias.codePointAt(i);
+      node = node.storeChild(codePoint);
+    }
 
-      if(i >= length) {
-        // Store the actual value.
-        parent = parent.storeChild(codePoint,value);
-        break;
-      }
+    // Store the actual value, but don't overwrite an existing one.
+    if(node.value != null) {
+      return;
+    }
+
+    node.value = value;
+    node.completion = value;
+    ++node.valueCount;
 
-      // Store part of the name/alias.
-      parent = parent.storeChild(codePoint);
+    while(pathLength > 0) {
+      final Node<V> parent = path[--pathLength];
+
+      ++parent.valueCount;
+      parent.updateCompletion();
     }
   }
 
@@ -85,47 +137,312 @@ public class LinkedTrie<V> {
   }
 
   public V find(String partial,V defaultValue,boolean allowLonger) {
-    if(partial == null || partial.isEmpty()) {
+    if(partial == null) {
       return defaultValue;
     }
 
-    final int length = partial.length();
-    Node node = rootNode;
+    return find(partial,0,partial.length(),defaultValue,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end) {
+    return find(text,start,end,null,allowLonger);
+  }
+
+  public V find(CharSequence text,int start,int end,V defaultValue) {
+    return find(text,start,end,defaultValue,allowLonger);
+  }
+
+  /**
+   * <pre>
+   * Finds the partial at text[start,end), without needing to copy it out
+   * first, such as from a StringBuilder or a CharBuffer.
+   * </pre>
+   */
+  public V find(CharSequence text,int start,int end,V defaultValue,boolean allowLonger) {
+    Node<V> node = walker.find(rootNode,text,start,end,allowLonger,ignoreCase,ignoreSpace);
+
+    return (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+  }
+
+  public int findTokens(CharSequence text,V[] values,V defaultValue) {
+    return findTokens(text,0,text.length(),values,defaultValue,allowLonger);
+  }
+
+  /**
+   * <pre>
+   * Finds each whitespace-separated token of text[start,end) in a single
+   * pass, storing each token's value (or defaultValue) into values in order,
+   * until there are no more tokens or values is full.
+   *
+   * Returns the number of tokens stored into values.
+   *
+   * Example:
+   *   ("  up lft   down ", values, null)  //=> 3; values: [up, null, down]
+   * </pre>
+   */
+  public int findTokens(CharSequence text,int start,int end,V[] values,V defaultValue,boolean allowLonger) {
+    return walker.findTokens(rootNode,text,start,end,values.length,allowLonger,ignoreCase,(node,index) -> {
+      values[index] = (node != null) ? node.getCompletion(defaultValue) : defaultValue;
+    });
+  }
+
+  public List<V> findFuzzy(CharSequence text,int maxDistance) {
+    List<V> matches = new ArrayList<>();
+    findFuzzy(text,maxDistance,matches);
+
+    return matches;
+  }
+
+  public V findFuzzyUnique(CharSequence text,int maxDistance,V defaultValue) {
+    List<V> matches = findFuzzy(text,maxDistance);
+
+    return (matches.size() == 1) ? matches.get(0) : defaultValue;
+  }
+
+  /**
+   * <pre>
+   * Finds the values of the names/aliases that are closest to text, within
+   * maxDistance edits (insert, delete, or replace a code point), for typos
+   * like "lefft" or "uup". Doesn't check every name/alias, only the
+   * branches of the trie that can still be within the distance.
+   *
+   * Adds the distinct values of the best matches (in trie order) to matches,
+   * and returns their distance, or -1 if none.
+   *
+   * Examples (with "left", "lift", "up"):
+   *   ("lefft", 1)  //=> 1; [left]
+   *   ("uup", 1)    //=> 1; [up]
+   *   ("laft", 1)   //=> 1; [left, lift]
+   *   ("xyz", 1)    //=> -1; []
+   * </pre>
+   */
+  public int findFuzzy(CharSequence text,int maxDistance,Collection<? super V> matches) {
+    if(text == null || maxDistance < 0) {
+      return -1;
+    }
+
+    FuzzySearch<V> search = new FuzzySearch<>(buildKey(text),maxDistance);
+    walker.findFuzzy(rootNode,0,search);
+
+    matches.addAll(search.getMatches());
+
+    return search.getDistance();
+  }
+
+  /**
+   * <pre>
+   * Returns up to limit (key, value) pairs that start with the prefix,
+   * such as for completion hints.
+   *
+   * Example (with "help", "hello", "hi"):
+   *   ("he", 5)  //=> [hello=..., help=...]
+   * </pre>
+   */
+  public List<Map.Entry<String,V>> complete(CharSequence prefix,int limit) {
+    return stream(prefix).limit(limit).collect(Collectors.toList());
+  }
+
+  public Iterator<Map.Entry<String,V>> iterator(CharSequence prefix) {
+    return Spliterators.iterator(spliterator(prefix));
+  }
+
+  public Stream<Map.Entry<String,V>> stream(CharSequence prefix) {
+    return StreamSupport.stream(spliterator(prefix),false);
+  }
+
+  /**
+   * <pre>
+   * Lazily goes over each (key, value) pair that starts with the prefix
+   * (which can be empty for all), depth first, so in code point order.
+   *
+   * The keys are the stored keys (see buildKey()), built in a reused buffer.
+   * Nothing is collected up front, and it can be split for parallel streams.
+   *
+   * This trie must not be changed while going over it.
+   * </pre>
+   */
+  public Spliterator<Map.Entry<String,V>> spliterator(CharSequence prefix) {
+    final int length = prefix.length();
+    Node<V> node = rootNode;
     int codePoint;
 
-    for(int i = 0; i < length; i += Character.charCount(codePoint)) {
-      codePoint = partial.codePointAt(i);
-      Node child = node.getChild(codePoint);
+    for(int i = 0; i < length && node != null; i += Character.charCount(codePoint)) {
+      codePoint = codePointAt(prefix,i,length);
+      final int key = foldCodePoint(codePoint,ignoreCase,ignoreSpace);
 
-      if(child == null) {
-        // If allowLonger and the partial to find is "helpme", but the only name
-        //   found is "help", then return the value of "help".
-        // This allows a user to be more verbose than necessary.
-        if(allowLonger && node.hasValue()) {
-          return node.getValueBag().value;
-        }
-        else {
-          return defaultValue;
-        }
+      if(key >= 0) {
+        node = node.getChild(key);
       }
+    }
 
-      node = child;
+    if(node == null) {
+      return Spliterators.emptySpliterator();
     }
 
-    // If the partial to find is "ver" and the only name that starts with that
-    //   is "version", then return the value of "version".
-    while(node.hasNoValue()) {
-      // If there are 2 names that start with "ver", then just return the
-      //   default value, since it's ambiguous,
-      //   for example "version" and "verbose".
-      if(node.children.size() != 1) {
-        return defaultValue;
+    return new EntrySpliterator<>(node,0,node.size,buildKey(prefix),node.value);
+  }
+
+  /**
+   * <pre>
+   * Creates a new Cursor at the root, for narrowing down a partial one code
+   * point at a time, such as while a user is typing.
+   * </pre>
+   */
+  public Cursor<V> cursor() {
+    return new Cursor<>(this);
+  }
+
+  /**
+   * <pre>
+   * Compiles this into an immutable ArrayTrie for read-only lookups, which
+   * has the same find() behavior (and uses the current allowLonger), but
+   * walks flat arrays and uses a lot less memory.
+   *
+   * Later changes to this trie are not reflected in the ArrayTrie.
+   * </pre>
+   */
+  public ArrayTrie<V> compile() {
+    // Number the nodes in breadth-first order.
+    List<Node<V>> nodes = new ArrayList<>();
+    nodes.add(rootNode);
+
+    for(int i = 0; i < nodes.size(); ++i) {
+      Node<V> node = nodes.get(i);
+
+      for(int j = 0; j < node.size; ++j) {
+        nodes.add(node.children[j]);
       }
+    }
+
+    final int nodeCount = nodes.size();
+    final int[] firstEdges = new int[nodeCount + 1];
+    final int[] edgeKeys = new int[nodeCount - 1]; // Every node except the root.
+    final int[] valueIndexes = new int[nodeCount];
+    final int[] completionIndexes = new int[nodeCount];
+    final Map<V,Integer> valueToIndex = new IdentityHashMap<>();
+    final List<V> values = new ArrayList<>();
+    int edgeCount = 0;
 
-      node = node.children.values().iterator().next();
+    for(int i = 0; i < nodeCount; ++i) {
+      Node<V> node = nodes.get(i);
+
+      firstEdges[i] = edgeCount;
+      System.arraycopy(node.keys,0,edgeKeys,edgeCount,node.size);
+      edgeCount += node.size;
+
+      if(node.value == null) {
+        valueIndexes[i] = ArrayTrie.NO_VALUE;
+      }
+      else {
+        // Aliases share the same value, so only store it once.
+        valueIndexes[i] = valueToIndex.computeIfAbsent(node.value,(value) -> {
+          values.add(value);
+          return values.size() - 1;
+        });
+      }
+    }
+
+    firstEdges[nodeCount] = edgeCount;
+
+    // Children always come after their parent, so go backwards.
+    for(int i = nodeCount - 1; i >= 0; --i) {
+      if(valueIndexes[i] != ArrayTrie.NO_VALUE) {
+        completionIndexes[i] = valueIndexes[i];
+      }
+      else if((firstEdges[i + 1] - firstEdges[i]) == 1) {
+        completionIndexes[i] = completionIndexes[firstEdges[i] + 1];
+      }
+      else {
+        completionIndexes[i] = ArrayTrie.NO_VALUE;
+      }
+    }
+
+    return new ArrayTrie<>(firstEdges,edgeKeys,valueIndexes,completionIndexes
+        ,values.toArray(),allowLonger,ignoreCase,ignoreSpace);
+  }
+
+  /**
+   * <pre>
+   * Compiles this into a TrieScanner (an Aho-Corasick automaton), for finding
+   * all names/aliases in a text in a single pass.
+   *
+   * Later changes to this trie are not reflected in the TrieScanner.
+   * </pre>
+   */
+  public TrieScanner<V> compileScanner() {
+    return new TrieScanner<>(compile());
+  }
+
+  /**
+   * <pre>
+   * Builds the key that this trie would store for the name/alias, using
+   * ignoreCase and ignoreSpace.
+   *
+   * Examples (with ignoreCase and ignoreSpace):
+   *   ("Bt White")  //=> "btwhite"
+   * </pre>
+   */
+  public String buildKey(CharSequence nameOrAlias) {
+    return buildKey(nameOrAlias,ignoreCase,ignoreSpace);
+  }
+
+  static String buildKey(CharSequence nameOrAlias,boolean ignoreCase,boolean ignoreSpace) {
+    if(!ignoreCase && !ignoreSpace) {
+      return nameOrAlias.toString();
+    }
+
+    final int length = nameOrAlias.length();
+    StringBuilder buffer = new StringBuilder(length);
+    int codePoint;
+
+    for(int i = 0; i < length; i += Character.charCount(codePoint)) {
+      codePoint = codePointAt(nameOrAlias,i,length);
+      final int key = foldCodePoint(codePoint,ignoreCase,ignoreSpace);
+
+      if(key >= 0) {
+        buffer.appendCodePoint(key);
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * <pre>
+   * Returns the code point to use as a key, which is case folded if
+   * ignoreCase, or -1 if it should be skipped because of ignoreSpace.
+   * </pre>
+   */
+  static int foldCodePoint(int codePoint,boolean ignoreCase,boolean ignoreSpace) {
+    if(ignoreSpace && Character.isWhitespace(codePoint)) {
+      return -1;
+    }
+    if(ignoreCase && codePoint >= 'A') {
+      // Simple case folding, which also folds, for example, the final sigma.
+      return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+    return codePoint;
+  }
+
+  /**
+   * <pre>
+   * Like Character.codePointAt(), but doesn't read a low surrogate at or
+   * past end.
+   * </pre>
+   */
+  static int codePointAt(CharSequence text,int index,int end) {
+    final char high = text.charAt(index);
+
+    if(Character.isHighSurrogate(high) && (index + 1) < end) {
+      final char low = text.charAt(index + 1);
+
+      if(Character.isLowSurrogate(low)) {
+        return Character.toCodePoint(high,low);
+      }
     }
 
-    return node.getValue(defaultValue);
+    return high;
   }
 
   public void setAllowLonger(boolean allowLonger) {
@@ -136,67 +453,503 @@ public class LinkedTrie<V> {
     return allowLonger;
   }
 
-  public class Node {
-    private final Map<Integer,Node> children = new HashMap<>();
-    private final ValueBag valueBag;
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isIgnoreSpace() {
+    return ignoreSpace;
+  }
+
+  /**
+   * <pre>
+   * Depth first over the children [firstChild,endChild) of a node, with an
+   * explicit stack, so that it can be split between any of the children
+   * remaining in any of the stack's nodes.
+   * </pre>
+   */
+  private static final class EntrySpliterator<V> implements Spliterator<Map.Entry<String,V>> {
+    private Node<V>[] nodes;
+    private int[] nextChildren;
+    private int[] endChildren;
+    private int[] keyLengths;
+    private int depth = 0;
+    private final StringBuilder key;
+    private V firstValue;
+    private long estimatedSize;
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private EntrySpliterator(Node<V> node,int firstChild,int endChild,String key,V firstValue) {
+      this.nodes = new Node[16];
+      this.nextChildren = new int[16];
+      this.endChildren = new int[16];
+      this.keyLengths = new int[16];
+      this.key = new StringBuilder(Math.max(16,key.length() * 2)).append(key);
+      this.firstValue = firstValue;
+      this.estimatedSize = node.valueCount;
+
+      push(node,firstChild,endChild);
+    }
+
+    private void push(Node<V> node,int firstChild,int endChild) {
+      if(depth == nodes.length) {
+        final int capacity = depth * 2;
+
+        nodes = Arrays.copyOf(nodes,capacity);
+        nextChildren = Arrays.copyOf(nextChildren,capacity);
+        endChildren = Arrays.copyOf(endChildren,capacity);
+        keyLengths = Arrays.copyOf(keyLengths,capacity);
+      }
+
+      nodes[depth] = node;
+      nextChildren[depth] = firstChild;
+      endChildren[depth] = endChild;
+      keyLengths[depth] = key.length();
+      ++depth;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<String,V>> action) {
+      // The prefix's own value.
+      if(firstValue != null) {
+        V value = firstValue;
+        firstValue = null;
+
+        action.accept(Map.entry(key.toString(),value));
+        return true;
+      }
+
+      while(depth > 0) {
+        final int top = depth - 1;
+
+        if(nextChildren[top] >= endChildren[top]) {
+          nodes[top] = null;
+          --depth;
+          continue;
+        }
+
+        final Node<V> parent = nodes[top];
+        final int index = nextChildren[top]++;
+        final Node<V> child = parent.children[index];
+
+        key.setLength(keyLengths[top]);
+        key.appendCodePoint(parent.keys[index]);
+        push(child,0,child.size);
+
+        if(child.value != null) {
+          action.accept(Map.entry(key.toString(),child.value));
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    @Override
+    public Spliterator<Map.Entry<String,V>> trySplit() {
+      // Split the remaining children of the node closest to the root.
+      for(int i = 0; i < depth; ++i) {
+        final int remaining = endChildren[i] - nextChildren[i];
+
+        if(remaining < 2) {
+          continue;
+        }
+
+        final int middle = nextChildren[i] + (remaining / 2);
+
+        // Since ORDERED, the split must be the first part: the nodes above
+        //   this one (in progress) and the first half of this node's children.
+        // This keeps the second half and the rest of the nodes below.
+        EntrySpliterator<V> prefix = new EntrySpliterator<>(nodes[i],nextChildren[i],middle
+            ,key.substring(0,keyLengths[i]),firstValue);
+
+        for(int j = i + 1; j < depth; ++j) {
+          prefix.key.setLength(keyLengths[j - 1]);
+          prefix.key.append(key,keyLengths[j - 1],keyLengths[j]);
+          prefix.push(nodes[j],nextChildren[j],endChildren[j]);
+          nodes[j] = null;
+        }
+
+        prefix.key.setLength(0);
+        prefix.key.append(key);
+
+        firstValue = null;
+        nextChildren[i] = middle;
+        depth = i + 1;
+
+        estimatedSize >>>= 1;
+        prefix.estimatedSize = estimatedSize;
+
+        return prefix;
+      }
+
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | DISTINCT | NONNULL;
+    }
+  }
+
+  /**
+   * <pre>
+   * A stateful position in a LinkedTrie, for type-ahead narrowing.
+   *
+   * Instead of calling find() with the whole partial on each key press,
+   * which re-walks it from the root each time, advance() and retreat() move
+   * by one code point (for backspace), and the current value & number of
+   * candidates are read in O(1) without allocating.
+   *
+   * The current value is always the same as find() with the partial typed
+   * so far (including ignoreCase, ignoreSpace, and the trie's allowLonger).
+   *
+   * Example (with "help", "hello", "hi"):
+   *   Cursor<V> cursor = trie.cursor();
+   *   cursor.advance('h');  // isAmbiguous() = true,  getCandidateCount() = 3
+   *   cursor.advance('e');  // isAmbiguous() = true,  getCandidateCount() = 2
+   *   cursor.advance('l');  // isAmbiguous() = true,  getCandidateCount() = 2
+   *   cursor.advance('p');  // isAmbiguous() = false, currentValue() = help
+   *   cursor.retreat();     // isAmbiguous() = true,  getCandidateCount() = 2
+   *
+   * Like the iterators, a cursor isn't thread-safe, but it does see later
+   * adds to the trie, even past the end of a branch (the code points typed
+   * past it are kept, so that they're advanced into the new nodes).
+   * </pre>
+   */
+  public static class Cursor<V> {
+    private final LinkedTrie<V> trie;
+    // The node after each step; a skipped code point (see ignoreSpace)
+    //   repeats the node, so that retreat() can undo it.
+    private Node<V>[] nodes;
+    private int depth = 0;
+    // Keys typed past the end of a branch (see allowLonger), in order.
+    private int[] overflowKeys = new int[8];
+    private int overflow = 0;
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private Cursor(LinkedTrie<V> trie) {
+      this.trie = trie;
+      this.nodes = new Node[32];
+      this.nodes[0] = trie.rootNode;
+    }
+
+    /**
+     * <pre>
+     * Returns false if there's no name/alias that starts with the partial,
+     * but the code point is still counted, so that retreat() undoes it.
+     * </pre>
+     */
+    public boolean advance(int codePoint) {
+      final int key = foldCodePoint(codePoint,trie.ignoreCase,trie.ignoreSpace);
+
+      if(catchUp() && push(key)) {
+        return true;
+      }
+
+      if(overflow == overflowKeys.length) {
+        overflowKeys = Arrays.copyOf(overflowKeys,overflow * 2);
+      }
+
+      overflowKeys[overflow++] = key;
+      return false;
+    }
+
+    public boolean advance(CharSequence text) {
+      final int length = text.length();
+      int codePoint;
+
+      for(int i = 0; i < length; i += Character.charCount(codePoint)) {
+        codePoint = codePointAt(text,i,length);
+        advance(codePoint);
+      }
+
+      return catchUp();
+    }
+
+    /**
+     * <pre>
+     * Advances into the child of the key, or repeats the node if the key is
+     * skipped (-1). Returns false if there's no child.
+     * </pre>
+     */
+    private boolean push(int key) {
+      final Node<V> node = nodes[depth];
+      final Node<V> child = (key >= 0) ? node.getChild(key) : node;
+
+      if(child == null) {
+        return false;
+      }
+
+      if(++depth == nodes.length) {
+        nodes = Arrays.copyOf(nodes,depth * 2);
+      }
+
+      nodes[depth] = child;
+      return true;
+    }
+
+    /**
+     * <pre>
+     * Advances the overflow keys into any nodes that were added since they
+     * were typed. Returns true if there's no overflow left.
+     * </pre>
+     */
+    private boolean catchUp() {
+      int caughtUp = 0;
+
+      while(caughtUp < overflow && push(overflowKeys[caughtUp])) {
+        ++caughtUp;
+      }
+
+      if(caughtUp > 0) {
+        overflow -= caughtUp;
+        System.arraycopy(overflowKeys,caughtUp,overflowKeys,0,overflow);
+      }
+
+      return overflow == 0;
+    }
+
+    /**
+     * <pre>
+     * Undoes the last advance(). Returns false if already at the start.
+     * </pre>
+     */
+    public boolean retreat() {
+      if(overflow > 0) {
+        --overflow;
+        return true;
+      }
+      if(depth == 0) {
+        return false;
+      }
+
+      nodes[depth--] = null;
+      return true;
+    }
+
+    public void reset() {
+      Arrays.fill(nodes,1,depth + 1,null);
+      depth = 0;
+      overflow = 0;
+    }
+
+    public V currentValue() {
+      return currentValue(null);
+    }
+
+    public V currentValue(V defaultValue) {
+      catchUp();
+
+      final Node<V> node = nodes[depth];
+
+      if(overflow > 0) {
+        return (trie.allowLonger && node.value != null) ? node.value : defaultValue;
+      }
+
+      return (node != trie.rootNode) ? node.getCompletion(defaultValue) : defaultValue;
+    }
+
+    /**
+     * <pre>
+     * Returns true if the partial has no value because more than one
+     * name/alias starts with it.
+     * </pre>
+     */
+    public boolean isAmbiguous() {
+      return catchUp() && nodes[depth].valueCount > 1 && currentValue() == null;
+    }
+
+    /**
+     * <pre>
+     * Returns true if the partial is exactly a name/alias.
+     * </pre>
+     */
+    public boolean isExact() {
+      return catchUp() && depth > 0 && nodes[depth].value != null;
+    }
+
+    /**
+     * <pre>
+     * The number of names/aliases that start with the partial (see
+     * complete() to list them).
+     *
+     * This is 0 past the end of a branch, even if allowLonger resolves it.
+     * </pre>
+     */
+    public int getCandidateCount() {
+      return catchUp() ? nodes[depth].valueCount : 0;
+    }
+
+    /**
+     * <pre>
+     * The number of code points advanced (minus the ones retreated).
+     * </pre>
+     */
+    public int length() {
+      return depth + overflow;
+    }
+  }
+
+  private static final class NodeWalker<V> extends TrieWalker<Node<V>,V> {
+    @Override
+    int getChildCount(Node<V> node) {
+      return node.size;
+    }
+
+    @Override
+    int getKey(Node<V> node,int index) {
+      return node.keys[index];
+    }
+
+    @Override
+    Node<V> getChildAt(Node<V> node,int index) {
+      return node.children[index];
+    }
+
+    @Override
+    Node<V> getChild(Node<V> node,int codePoint) {
+      return node.getChild(codePoint);
+    }
+
+    @Override
+    V getValue(Node<V> node) {
+      return node.value;
+    }
+  }
+
+  public static class Node<V> {
+    private static final int[] NO_KEYS = new int[0];
+
+    private int[] keys = NO_KEYS;
+    private Node<V>[] children = null;
+    private int size = 0;
+    private V value = null;
+    // This node's value, else the completion of its only child, else null (ambiguous).
+    private V completion = null;
+    // The number of values in this subtree (this node's & all descendants').
+    private int valueCount = 0;
 
     private Node() {
-      this.valueBag = null;
     }
 
-    private Node(V value) {
-      this.valueBag = new ValueBag(value);
+    private Node<V> storeChild(int codePoint) {
+      int index = indexOf(codePoint);
+
+      if(index >= 0) {
+        return children[index];
+      }
+
+      index = -(index + 1); // Insertion point.
+
+      if(size == keys.length) {
+        grow();
+      }
+
+      // Shift over to keep the keys sorted.
+      System.arraycopy(keys,index,keys,index + 1,size - index);
+      System.arraycopy(children,index,children,index + 1,size - index);
+
+      Node<V> child = new Node<>();
+
+      keys[index] = codePoint;
+      children[index] = child;
+      ++size;
+
+      return child;
     }
 
-    protected Node storeChild(Integer codePoint) {
-      return storeChild(codePoint,new Node());
+    private void updateCompletion() {
+      if(value != null) {
+        completion = value;
+      }
+      else {
+        completion = (size == 1) ? children[0].completion : null;
+      }
     }
 
-    protected Node storeChild(Integer codePoint,V value) {
-      return storeChild(codePoint,new Node(value));
+    @SuppressWarnings({"unchecked","rawtypes"})
+    private void grow() {
+      // Most nodes only have 1 child, so start small.
+      int capacity = (size < 2) ? (size + 1) : (size + (size >> 1));
+
+      keys = Arrays.copyOf(keys,capacity);
+      children = (children == null) ? new Node[capacity] : Arrays.copyOf(children,capacity);
     }
 
-    private Node storeChild(Integer codePoint,Node child) {
-      Node thisChild = children.get(codePoint);
+    private int indexOf(int codePoint) {
+      // For a few children, a linear scan beats a binary search.
+      if(size <= 8) {
+        for(int i = 0; i < size; ++i) {
+          final int key = keys[i];
+
+          if(key == codePoint) {
+            return i;
+          }
+          if(key > codePoint) {
+            return -(i + 1);
+          }
+        }
 
-      if(thisChild == null || (thisChild.valueBag == null && child.valueBag != null)) {
-        children.put(codePoint,child);
-        thisChild = child;
+        return -(size + 1);
       }
 
-      return thisChild;
+      return Arrays.binarySearch(keys,0,size,codePoint);
+    }
+
+    public Node<V> getChild(int codePoint) {
+      int index = indexOf(codePoint);
+
+      return (index >= 0) ? children[index] : null;
     }
 
-    public Node getChild(int codePoint) {
-      return children.get(codePoint);
+    public int getChildCount() {
+      return size;
     }
 
     public V getValue() {
-      return getValue(null);
+      return value;
     }
 
     public V getValue(V defaultValue) {
-      return (valueBag != null) ? valueBag.value : defaultValue;
+      return (value != null) ? value : defaultValue;
     }
 
-    public boolean hasValue() {
-      return valueBag != null;
+    /**
+     * <pre>
+     * The value that a partial ending at this node resolves to: this node's
+     * value, or else the value of its only completion, or else null if
+     * it's ambiguous.
+     * </pre>
+     */
+    public V getCompletion() {
+      return completion;
     }
 
-    public boolean hasNoValue() {
-      return valueBag == null;
+    public V getCompletion(V defaultValue) {
+      return (completion != null) ? completion : defaultValue;
     }
 
-    public ValueBag getValueBag() {
-      return valueBag;
+    /**
+     * <pre>
+     * The number of names/aliases that end at this node or below it.
+     * </pre>
+     */
+    public int getValueCount() {
+      return valueCount;
     }
-  }
 
-  public class ValueBag {
-    public final V value;
+    public boolean hasValue() {
+      return value != null;
+    }
 
-    public ValueBag(V value) {
-      this.value = value;
+    public boolean hasNoValue() {
+      return value == null;
     }
   }
 }
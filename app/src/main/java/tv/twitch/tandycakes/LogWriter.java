@@ -0,0 +1,283 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * The background writer of Loggers.
+ *
+ * Log records go into a lock-free queue, which a single daemon thread
+ * drains in batches of up to MAX_BATCH_SIZE, writing & flushing each batch
+ * at once to stdout or a rolling file. The queue is unbounded, so that
+ * logging never blocks; the trade-off is memory if the output can't keep up.
+ *
+ * Any records left are written on close() or on JVM shutdown.
+ * </pre>
+ */
+public class LogWriter implements AutoCloseable {
+  public static final int MAX_BATCH_SIZE = 256;
+
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+      .withZone(ZoneId.systemDefault());
+
+  private static LogWriter stdoutWriter = null;
+
+  private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+  private final Thread shutdownHook;
+  private volatile boolean isWaiting = false;
+  private volatile boolean isClosed = false;
+
+  // Only used by the writer (under the lock of this).
+  private final StringBuilder batch = new StringBuilder(8 * 1024);
+  private final PrintStream out;
+  private final Path file;
+  private final long maxFileSize;
+  private final int maxBackups;
+  private OutputStream fileOut = null;
+  private long fileSize = 0;
+
+  /**
+   * <pre>
+   * The shared writer to stdout.
+   * </pre>
+   */
+  public static synchronized LogWriter stdout() {
+    if(stdoutWriter == null || stdoutWriter.isClosed) {
+      stdoutWriter = new LogWriter(System.out,null,0,0);
+    }
+
+    return stdoutWriter;
+  }
+
+  /**
+   * <pre>
+   * Writes to the file, which is rolled when it would go over maxFileSize:
+   * "file" is renamed to "file.1", "file.1" to "file.2", etc., up to
+   * maxBackups, and then a new "file" is started.
+   * </pre>
+   */
+  public static LogWriter rollingFile(Path file,long maxFileSize,int maxBackups) {
+    if(maxFileSize <= 0) {
+      throw new IllegalArgumentException(Formatter.format("Invalid max file size: {}.",maxFileSize));
+    }
+    if(maxBackups < 0) {
+      throw new IllegalArgumentException(Formatter.format("Invalid max backups: {}.",maxBackups));
+    }
+
+    return new LogWriter(null,file,maxFileSize,maxBackups);
+  }
+
+  private LogWriter(PrintStream out,Path file,long maxFileSize,int maxBackups) {
+    this.out = out;
+    this.file = file;
+    this.maxFileSize = maxFileSize;
+    this.maxBackups = maxBackups;
+
+    thread = new Thread(this::run,"twandy-log-writer");
+    thread.setDaemon(true);
+    thread.start();
+
+    // Removed in close(), else each closed writer would be kept until the JVM exits.
+    shutdownHook = new Thread(this::writeAll,"twandy-log-shutdown");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * <pre>
+   * Queues the record and returns right away.
+   * </pre>
+   */
+  public void write(Logger.Level level,String name,String message) {
+    queue.offer(new Record(System.currentTimeMillis(),level,name,message));
+
+    // Only wake up the writer if it's (about to be) sleeping.
+    if(isWaiting) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private void run() {
+    while(!isClosed) {
+      if(writeBatch()) {
+        continue;
+      }
+
+      isWaiting = true;
+
+      // Check again after setting isWaiting, else could miss a wake up.
+      if(queue.isEmpty() && !isClosed) {
+        LockSupport.parkNanos(this,MAX_IDLE_NANOS);
+      }
+
+      isWaiting = false;
+    }
+
+    writeAll();
+  }
+
+  private void writeAll() {
+    while(writeBatch()) {
+      // Keep writing.
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns false if there was nothing to write.
+   * </pre>
+   */
+  private synchronized boolean writeBatch() {
+    Record record = queue.poll();
+
+    if(record == null) {
+      return false;
+    }
+
+    batch.setLength(0);
+
+    for(int i = 0; record != null; ) {
+      TIME_FORMATTER.formatTo(Instant.ofEpochMilli(record.time),batch);
+      batch.append(" [").append(record.level).append("] ")
+          .append(record.name).append(": ")
+          .append(record.message).append(System.lineSeparator());
+
+      record = (++i < MAX_BATCH_SIZE) ? queue.poll() : null;
+    }
+
+    if(out != null) {
+      out.append(batch);
+      out.flush();
+    }
+    else {
+      writeToFile(batch.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Don't keep a huge buffer around forever because of 1 huge batch.
+    if(batch.capacity() > 64 * 1024) {
+      batch.setLength(0);
+      batch.trimToSize();
+    }
+
+    return true;
+  }
+
+  private void writeToFile(byte[] bytes) {
+    try {
+      if(fileOut != null && fileSize > 0 && (fileSize + bytes.length) > maxFileSize) {
+        fileOut.close();
+        fileOut = null;
+        roll();
+      }
+      if(fileOut == null) {
+        fileOut = Files.newOutputStream(file,StandardOpenOption.CREATE,StandardOpenOption.APPEND);
+        fileSize = Files.size(file);
+      }
+
+      fileOut.write(bytes);
+      fileOut.flush();
+      fileSize += bytes.length;
+    }
+    catch(IOException e) {
+      // Nowhere else to log it.
+      System.err.println(Formatter.format("Failed to write log file '{}': {}",file,e.getLocalizedMessage()));
+    }
+  }
+
+  private void roll() throws IOException {
+    if(maxBackups == 0) {
+      Files.deleteIfExists(file);
+      return;
+    }
+
+    Files.deleteIfExists(backupFile(maxBackups));
+
+    for(int i = maxBackups - 1; i >= 1; --i) {
+      Path backup = backupFile(i);
+
+      if(Files.exists(backup)) {
+        Files.move(backup,backupFile(i + 1),StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    Files.move(file,backupFile(1),StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private Path backupFile(int number) {
+    return file.resolveSibling(file.getFileName() + "." + number);
+  }
+
+  /**
+   * <pre>
+   * Writes any records left and stops the writer thread.
+   * </pre>
+   */
+  @Override
+  public void close() {
+    isClosed = true;
+    LockSupport.unpark(thread);
+
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    }
+    catch(IllegalStateException e) {
+      // Already shutting down, so the hook is running (or ran) anyway.
+    }
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized(this) {
+      writeAll();
+
+      if(fileOut != null) {
+        try {
+          fileOut.close();
+        }
+        catch(IOException e) {
+          System.err.println(Formatter.format("Failed to close log file '{}': {}",file,e.getLocalizedMessage()));
+        }
+
+        fileOut = null;
+      }
+    }
+  }
+
+  private static final class Record {
+    private final long time;
+    private final Logger.Level level;
+    private final String name;
+    private final String message;
+
+    private Record(long time,Logger.Level level,String name,String message) {
+      this.time = time;
+      this.level = level;
+      this.name = name;
+      this.message = message;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * A small logger that never makes the calling thread wait on I/O.
+ *
+ * The level is checked before any formatting, so a disabled line costs
+ * only the check. The message is formatted (with Formatter) on the calling
+ * thread, since the args might change afterwards, and then queued to the
+ * LogWriter's background thread, which does the actual writing.
+ *
+ * For args that are expensive to build, use Suppliers, which are only
+ * called if the level is enabled:
+ *   log.debug("Chat: {}",() -> dumpChat());
+ *
+ * Example:
+ *   Logger log = new Logger("twandy");
+ *   log.debug("Resolved <game> arg {}.",gameArg);
+ * </pre>
+ */
+public class Logger {
+  public enum Level {
+    TRACE,DEBUG,INFO,WARN,ERROR,
+    OFF,
+  }
+
+  private final String name;
+  private volatile Level level;
+  private final LogWriter writer;
+
+  public Logger(String name) {
+    this(name,Level.INFO,LogWriter.stdout());
+  }
+
+  public Logger(String name,Level level,LogWriter writer) {
+    this.name = name;
+    this.level = level;
+    this.writer = writer;
+  }
+
+  public boolean isEnabled(Level level) {
+    return level != Level.OFF && level.ordinal() >= this.level.ordinal();
+  }
+
+  public void log(Level level,String format,Object... args) {
+    if(!isEnabled(level)) {
+      return;
+    }
+
+    writer.write(level,name,Formatter.format(format,args));
+  }
+
+  /**
+   * <pre>
+   * A plain null arg binds to this overload, so null args is formatted the
+   * same as Formatter.format(format,null), & a null Supplier as a null arg:
+   *   log.info("This is {} text.",null);  //=> "This is {} text."
+   * </pre>
+   */
+  public void log(Level level,String format,Supplier<?>... args) {
+    if(!isEnabled(level)) {
+      return;
+    }
+    if(args == null) {
+      writer.write(level,name,Formatter.format(format,(Object[])null));
+      return;
+    }
+
+    final Object[] values = new Object[args.length];
+
+    for(int i = 0; i < args.length; ++i) {
+      values[i] = (args[i] != null) ? args[i].get() : null;
+    }
+
+    writer.write(level,name,Formatter.format(format,values));
+  }
+
+  public void trace(String format,Object... args) {
+    log(Level.TRACE,format,args);
+  }
+
+  public void trace(String format,Supplier<?>... args) {
+    log(Level.TRACE,format,args);
+  }
+
+  public void debug(String format,Object... args) {
+    log(Level.DEBUG,format,args);
+  }
+
+  public void debug(String format,Supplier<?>... args) {
+    log(Level.DEBUG,format,args);
+  }
+
+  public void info(String format,Object... args) {
+    log(Level.INFO,format,args);
+  }
+
+  public void info(String format,Supplier<?>... args) {
+    log(Level.INFO,format,args);
+  }
+
+  public void warn(String format,Object... args) {
+    log(Level.WARN,format,args);
+  }
+
+  public void warn(String format,Supplier<?>... args) {
+    log(Level.WARN,format,args);
+  }
+
+  public void error(String format,Object... args) {
+    log(Level.ERROR,format,args);
+  }
+
+  public void error(String format,Supplier<?>... args) {
+    log(Level.ERROR,format,args);
+  }
+
+  public void setLevel(Level level) {
+    this.level = level;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  public LogWriter getWriter() {
+    return writer;
+  }
+}
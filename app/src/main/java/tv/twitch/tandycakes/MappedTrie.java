@@ -0,0 +1,366 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * A read-only trie that's queried in place from a memory-mapped file, so that
+ * large vocabularies (chat filter lists, emote names, etc.) can be shipped as
+ * data files and opened instantly, instead of rebuilding a LinkedTrie with
+ * add() for each name/alias.
+ *
+ * The file is written from a LinkedTrie (or ArrayTrie) with write(), and has
+ * the same layout as an ArrayTrie, so find() has the same behavior
+ * (prefix completion, allowLonger, ignoreCase, and ignoreSpace).
+ *
+ * The values are stored as UTF-8 strings. findIndex() doesn't allocate, and
+ * find() only allocates the found value's string.
+ *
+ * File layout (all ints are big endian):
+ *   int magic, version, flags, nodeCount, valueCount
+ *   int firstEdges[nodeCount + 1]
+ *   int edgeKeys[nodeCount - 1]
+ *   int valueIndexes[nodeCount]
+ *   int completionIndexes[nodeCount]
+ *   int valueOffsets[valueCount + 1]  // Into the value bytes.
+ *   byte values[]                     // UTF-8.
+ * </pre>
+ */
+public class MappedTrie {
+  public static final int MAGIC = 0x54575452; // "TWTR"
+  public static final int VERSION = 1;
+  public static final int NO_VALUE = ArrayTrie.NO_VALUE;
+
+  private static final int HEADER_SIZE = 5 * Integer.BYTES;
+  private static final int FLAG_ALLOW_LONGER = 1;
+  private static final int FLAG_IGNORE_CASE = 1 << 1;
+  private static final int FLAG_IGNORE_SPACE = 1 << 2;
+
+  private final ByteBuffer valueBytes;
+  private final IntBuffer firstEdges;
+  private final IntBuffer edgeKeys;
+  private final IntBuffer valueIndexes;
+  private final IntBuffer completionIndexes;
+  private final IntBuffer valueOffsets;
+  private final int nodeCount;
+  private final int valueCount;
+  private final boolean allowLonger;
+  private final boolean ignoreCase;
+  private final boolean ignoreSpace;
+
+  public static <V> void write(LinkedTrie<V> trie,Path file,Function<? super V,String> encoder) throws IOException {
+    write(trie.compile(),file,encoder);
+  }
+
+  public static <V> void write(ArrayTrie<V> trie,Path file,Function<? super V,String> encoder) throws IOException {
+    final int nodeCount = trie.getNodeCount();
+    final int valueCount = trie.getValueCount();
+    final byte[][] values = new byte[valueCount][];
+    int valuesSize = 0;
+
+    for(int i = 0; i < valueCount; ++i) {
+      values[i] = encoder.apply(trie.getValue(i)).getBytes(StandardCharsets.UTF_8);
+      valuesSize += values[i].length;
+    }
+
+    int flags = 0;
+
+    if(trie.isAllowLonger()) {
+      flags |= FLAG_ALLOW_LONGER;
+    }
+    if(trie.ignoreCase) {
+      flags |= FLAG_IGNORE_CASE;
+    }
+    if(trie.ignoreSpace) {
+      flags |= FLAG_IGNORE_SPACE;
+    }
+
+    final long size = HEADER_SIZE
+        + (long)Integer.BYTES * (trie.firstEdges.length + trie.edgeKeys.length
+            + trie.valueIndexes.length + trie.completionIndexes.length + valueCount + 1)
+        + valuesSize;
+
+    try(FileChannel channel = FileChannel.open(file,StandardOpenOption.CREATE
+        ,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.READ,StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,size);
+
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(nodeCount).putInt(valueCount);
+
+      IntBuffer ints = buffer.asIntBuffer();
+
+      ints.put(trie.firstEdges).put(trie.edgeKeys).put(trie.valueIndexes).put(trie.completionIndexes);
+
+      int valueOffset = 0;
+
+      for(byte[] value: values) {
+        ints.put(valueOffset);
+        valueOffset += value.length;
+      }
+
+      ints.put(valueOffset);
+      buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+
+      for(byte[] value: values) {
+        buffer.put(value);
+      }
+
+      buffer.force();
+    }
+  }
+
+  public static MappedTrie open(Path file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file,StandardOpenOption.READ)) {
+      // The mapping stays valid after closing the channel.
+      return new MappedTrie(channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()));
+    }
+  }
+
+  /**
+   * <pre>
+   * The header & the size of every section are checked against the buffer's
+   * capacity up front, & then every edge, index, & value offset is checked
+   * (in 1 pass), so a truncated/corrupt file fails here with an
+   * IllegalArgumentException, instead of later in find() or getValue().
+   * </pre>
+   */
+  public MappedTrie(ByteBuffer buffer) {
+    final int capacity = buffer.capacity();
+
+    if(capacity < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a trie file.");
+    }
+
+    final int version = buffer.getInt(4);
+
+    if(version != VERSION) {
+      throw new IllegalArgumentException(Formatter.format("Unsupported trie file version: {}.",version));
+    }
+
+    final int flags = buffer.getInt(8);
+
+    this.nodeCount = buffer.getInt(12);
+    this.valueCount = buffer.getInt(16);
+    this.allowLonger = (flags & FLAG_ALLOW_LONGER) != 0;
+    this.ignoreCase = (flags & FLAG_IGNORE_CASE) != 0;
+    this.ignoreSpace = (flags & FLAG_IGNORE_SPACE) != 0;
+
+    // There's always the root node.
+    if(nodeCount < 1 || valueCount < 0) {
+      throw new IllegalArgumentException(Formatter.format(
+          "Not a trie file: invalid counts (nodes: {}, values: {}).",nodeCount,valueCount));
+    }
+
+    // As longs, so that huge counts can't overflow.
+    final long intsCount = (nodeCount + 1L) + (nodeCount - 1L) + nodeCount + nodeCount + (valueCount + 1L);
+    final long valuesOffset = HEADER_SIZE + intsCount * Integer.BYTES;
+
+    if(valuesOffset > capacity) {
+      throw new IllegalArgumentException(Formatter.format(
+          "Not a trie file: truncated ({} bytes, but needs at least {}).",capacity,valuesOffset));
+    }
+
+    int offset = HEADER_SIZE;
+
+    this.firstEdges = sliceInts(buffer,offset,nodeCount + 1);
+    offset += (nodeCount + 1) * Integer.BYTES;
+    this.edgeKeys = sliceInts(buffer,offset,nodeCount - 1);
+    offset += (nodeCount - 1) * Integer.BYTES;
+    this.valueIndexes = sliceInts(buffer,offset,nodeCount);
+    offset += nodeCount * Integer.BYTES;
+    this.completionIndexes = sliceInts(buffer,offset,nodeCount);
+    offset += nodeCount * Integer.BYTES;
+    this.valueOffsets = sliceInts(buffer,offset,valueCount + 1);
+    offset += (valueCount + 1) * Integer.BYTES;
+    this.valueBytes = buffer.slice(offset,capacity - offset);
+
+    if(firstEdges.get(0) != 0 || firstEdges.get(nodeCount) != nodeCount - 1) {
+      throw new IllegalArgumentException("Not a trie file: invalid edges.");
+    }
+
+    final int valuesSize = valueOffsets.get(valueCount);
+
+    if(valueOffsets.get(0) != 0 || valuesSize != valueBytes.capacity()) {
+      throw new IllegalArgumentException(Formatter.format(
+          "Not a trie file: invalid values size ({} bytes, but has {}).",valuesSize,valueBytes.capacity()));
+    }
+
+    checkNodes();
+    checkValueOffsets();
+  }
+
+  /**
+   * <pre>
+   * Checks every node in 1 pass, so that find() can't go out of bounds:
+   * - Its edges are in order & in bounds (so every child is in range).
+   * - Its edge keys are sorted (for the binary search).
+   * - Its value index & completion index are NO_VALUE or in range.
+   * </pre>
+   */
+  private void checkNodes() {
+    for(int node = 0; node < nodeCount; ++node) {
+      final int firstEdge = firstEdges.get(node);
+      final int lastEdge = firstEdges.get(node + 1);
+
+      // The last firstEdges[nodeCount] was checked already, so this keeps all of them in bounds.
+      if(firstEdge > lastEdge) {
+        throw new IllegalArgumentException(Formatter.format(
+            "Not a trie file: invalid edges of node {} ({} to {}).",node,firstEdge,lastEdge));
+      }
+
+      for(int edge = firstEdge + 1; edge < lastEdge; ++edge) {
+        if(edgeKeys.get(edge - 1) >= edgeKeys.get(edge)) {
+          throw new IllegalArgumentException(Formatter.format(
+              "Not a trie file: unsorted edge keys of node {}.",node));
+        }
+      }
+
+      checkValueIndex("value",node,valueIndexes.get(node));
+      checkValueIndex("completion",node,completionIndexes.get(node));
+    }
+  }
+
+  private void checkValueIndex(String kind,int node,int index) {
+    if(index != NO_VALUE && (index < 0 || index >= valueCount)) {
+      throw new IllegalArgumentException(Formatter.format(
+          "Not a trie file: invalid {} index of node {} ({}).",kind,node,index));
+    }
+  }
+
+  private void checkValueOffsets() {
+    for(int i = 0; i < valueCount; ++i) {
+      if(valueOffsets.get(i) > valueOffsets.get(i + 1)) {
+        throw new IllegalArgumentException(Formatter.format(
+            "Not a trie file: invalid offset of value {}.",i));
+      }
+    }
+  }
+
+  private static IntBuffer sliceInts(ByteBuffer buffer,int offset,int count) {
+    return buffer.slice(offset,count * Integer.BYTES).asIntBuffer();
+  }
+
+  public String find(String partial) {
+    return find(partial,allowLonger);
+  }
+
+  public String find(String partial,boolean allowLonger) {
+    return find(partial,null,allowLonger);
+  }
+
+  public String find(String partial,String defaultValue) {
+    return find(partial,defaultValue,allowLonger);
+  }
+
+  public String find(String partial,String defaultValue,boolean allowLonger) {
+    final int index = findIndex(partial,allowLonger);
+
+    return (index != NO_VALUE) ? getValue(index) : defaultValue;
+  }
+
+  public String find(CharSequence text,int start,int end,String defaultValue,boolean allowLonger) {
+    final int index = findIndex(text,start,end,allowLonger);
+
+    return (index != NO_VALUE) ? getValue(index) : defaultValue;
+  }
+
+  public int findIndex(String partial,boolean allowLonger) {
+    if(partial == null) {
+      return NO_VALUE;
+    }
+
+    return findIndex(partial,0,partial.length(),allowLonger);
+  }
+
+  /**
+   * See ArrayTrie.findIndex().
+   */
+  public int findIndex(CharSequence text,int start,int end,boolean allowLonger) {
+    if(start >= end) {
+      return NO_VALUE;
+    }
+
+    int node = 0;
+    int codePoint;
+
+    for(int i = start; i < end; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+      final int key = LinkedTrie.foldCodePoint(codePoint,ignoreCase,ignoreSpace);
+
+      if(key < 0) {
+        continue;
+      }
+
+      int child = getChild(node,key);
+
+      if(child < 0) {
+        return allowLonger ? valueIndexes.get(node) : NO_VALUE;
+      }
+
+      node = child;
+    }
+
+    return (node != 0) ? completionIndexes.get(node) : NO_VALUE;
+  }
+
+  private int getChild(int node,int codePoint) {
+    int low = firstEdges.get(node);
+    int high = firstEdges.get(node + 1) - 1;
+
+    while(low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int key = edgeKeys.get(mid);
+
+      if(key < codePoint) {
+        low = mid + 1;
+      }
+      else if(key > codePoint) {
+        high = mid - 1;
+      }
+      else {
+        return mid + 1; // See ArrayTrie for why (+ 1).
+      }
+    }
+
+    return -1;
+  }
+
+  public String getValue(int index) {
+    final int offset = valueOffsets.get(index);
+    final int length = valueOffsets.get(index + 1) - offset;
+
+    return StandardCharsets.UTF_8.decode(valueBytes.slice(offset,length)).toString();
+  }
+
+  public int getValueCount() {
+    return valueCount;
+  }
+
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  public boolean isAllowLonger() {
+    return allowLonger;
+  }
+
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isIgnoreSpace() {
+    return ignoreSpace;
+  }
+}
@@ -0,0 +1,440 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * A live, in-place view on the terminal, such as for showing the cursor's
+ * coords or vote tallies that update many times a second.
+ *
+ * Text is put into a back buffer of styled cells, and render() compares it
+ * with the last rendered frame, only writing the changed cells (with cursor
+ * moves in between), in 1 write, so there's no flooding or flickering.
+ *
+ * Wide chars (such as CJK & emoji) take up 2 cells. Styles use the style
+ * names/aliases of the Fansi, such as "bold/red" or "cmd".
+ *
+ * Example:
+ *   Screen screen = new Screen(fansi,40,2);
+ *
+ *   while(isRunning) {
+ *     screen.clear();
+ *     screen.put(0,0,"Votes","title");
+ *     screen.put(0,1,"up: " + upVotes,"cmd");
+ *     screen.render(); // Skipped if called again too soon.
+ *   }
+ * </pre>
+ */
+public class Screen {
+  public static final int DEFAULT_MAX_FPS = 30;
+
+  // For a cell that is the 2nd half of a wide char.
+  private static final int WIDE_TAIL = -1;
+  // For a cell that must be written, such as at the start.
+  private static final int INVALID = -2;
+  // A cursor move (ESC[nC) costs at least 4 bytes, so re-write gaps smaller than this.
+  private static final int MAX_REWRITE_GAP = 4;
+
+  private final Fansi fansi;
+  private final int width;
+  private final int height;
+  private int originRow = 1;
+  private int originCol = 1;
+
+  private final int[] codePoints;
+  private final int[] styleIds;
+  private final int[] lastCodePoints;
+  private final int[] lastStyleIds;
+  // Style ID 0 is no style.
+  private final List<String> styles = new ArrayList<>();
+  private final Map<String,Integer> styleIdsByNames = new HashMap<>();
+
+  private long minFrameNanos;
+  private long lastRenderNanos = 0;
+  private boolean hasRendered = false;
+  private final StringBuilder output = new StringBuilder();
+  private int lastOutputLength = 0;
+
+  public Screen(Fansi fansi,int width,int height) {
+    if(width <= 0 || height <= 0) {
+      throw new IllegalArgumentException(Formatter.format("Invalid screen size: {}x{}.",width,height));
+    }
+
+    this.fansi = fansi;
+    this.width = width;
+    this.height = height;
+
+    final int size = width * height;
+
+    codePoints = new int[size];
+    styleIds = new int[size];
+    lastCodePoints = new int[size];
+    lastStyleIds = new int[size];
+
+    styles.add("");
+    setMaxFps(DEFAULT_MAX_FPS);
+    clear();
+    invalidate();
+  }
+
+  /**
+   * <pre>
+   * Clears the back buffer to spaces without style.
+   * </pre>
+   */
+  public void clear() {
+    Arrays.fill(codePoints,' ');
+    Arrays.fill(styleIds,0);
+  }
+
+  /**
+   * <pre>
+   * Makes the next render() write every cell, such as if something else
+   * wrote over the screen.
+   * </pre>
+   */
+  public void invalidate() {
+    Arrays.fill(lastCodePoints,INVALID);
+  }
+
+  public int put(int x,int y,String text) {
+    return put(x,y,text,0);
+  }
+
+  /**
+   * <pre>
+   * Puts the text at (x, y), 0-based, with the style names/aliases, such as
+   * "bold/red". The text is clipped at the right edge, and control chars
+   * & zero-width chars (such as combining marks) are skipped.
+   *
+   * Returns the x after the text.
+   * </pre>
+   */
+  public int put(int x,int y,String text,String styleNames) {
+    return put(x,y,text,findStyleId(styleNames));
+  }
+
+  private int put(int x,int y,String text,int styleId) {
+    if(y < 0 || y >= height) {
+      return x;
+    }
+
+    final int length = text.length();
+    final int row = y * width;
+    int codePoint;
+
+    for(int i = 0; i < length && x < width; i += Character.charCount(codePoint)) {
+      codePoint = text.codePointAt(i);
+      final int charWidth = calcCharWidth(codePoint);
+
+      if(charWidth <= 0) {
+        continue;
+      }
+      if(x < 0) {
+        x += charWidth;
+        continue;
+      }
+
+      // Don't leave half of a wide char behind.
+      clearWideChar(row,x);
+
+      if(charWidth == 2) {
+        if((x + 1) >= width) {
+          codePoint = ' '; // Doesn't fit.
+        }
+        else {
+          clearWideChar(row,x + 1);
+          codePoints[row + x + 1] = WIDE_TAIL;
+          styleIds[row + x + 1] = styleId;
+        }
+      }
+
+      codePoints[row + x] = codePoint;
+      styleIds[row + x] = styleId;
+      x += charWidth;
+    }
+
+    return x;
+  }
+
+  private void clearWideChar(int row,int x) {
+    final int index = row + x;
+
+    if(codePoints[index] == WIDE_TAIL) {
+      codePoints[index - 1] = ' ';
+    }
+    else if((x + 1) < width && codePoints[index + 1] == WIDE_TAIL) {
+      codePoints[index + 1] = ' ';
+    }
+  }
+
+  private int findStyleId(String styleNames) {
+    if(styleNames == null || styleNames.isEmpty()) {
+      return 0;
+    }
+
+    Integer styleId = styleIdsByNames.get(styleNames);
+
+    if(styleId == null) {
+      String style = fansi.findStyles(styleNames);
+
+      if(style == null) {
+        throw new IllegalArgumentException(Formatter.format("Invalid style names/aliases: '{}'.",styleNames));
+      }
+
+      styleId = styles.indexOf(style);
+
+      if(styleId < 0) {
+        styleId = styles.size();
+        styles.add(style);
+      }
+
+      styleIdsByNames.put(styleNames,styleId);
+    }
+
+    return styleId;
+  }
+
+  /**
+   * <pre>
+   * Renders the changes since the last frame, unless called again before
+   * the max FPS allows, in which case this returns false and the changes
+   * are kept for the next render().
+   * </pre>
+   */
+  public boolean render() {
+    final long now = System.nanoTime();
+
+    if(hasRendered && (now - lastRenderNanos) < minFrameNanos) {
+      return false;
+    }
+
+    forceRender();
+    lastRenderNanos = now;
+    hasRendered = true;
+
+    return true;
+  }
+
+  /**
+   * <pre>
+   * Renders the changes right away, ignoring the max FPS.
+   * </pre>
+   */
+  public void forceRender() {
+    output.setLength(0);
+
+    int cursorRow = -1;
+    int cursorCol = -1; // -1 if unknown.
+    int styleId = -1; // -1 if unknown.
+
+    for(int y = 0; y < height; ++y) {
+      final int row = y * width;
+
+      for(int x = 0; x < width; ) {
+        int index = row + x;
+
+        if(!isChanged(index)) {
+          ++x;
+          continue;
+        }
+
+        // Start from the 1st half of a wide char.
+        if(codePoints[index] == WIDE_TAIL) {
+          --x;
+          --index;
+        }
+
+        // Move the cursor, or just re-write a small gap of unchanged cells.
+        if(cursorRow != y || cursorCol < 0 || cursorCol > x || (x - cursorCol) > MAX_REWRITE_GAP
+            || codePoints[row + cursorCol] == WIDE_TAIL) {
+          appendMove(y,x,cursorRow,cursorCol);
+        }
+        else {
+          x = cursorCol;
+          index = row + x;
+        }
+
+        final int gapEnd = Math.max(x,findRunEnd(row,x));
+
+        // Write the run.
+        while(x < gapEnd) {
+          final int cellStyleId = styleIds[index];
+
+          if(cellStyleId != styleId) {
+            output.append(Fansi.RESET).append(styles.get(cellStyleId));
+            styleId = cellStyleId;
+          }
+
+          final int codePoint = codePoints[index];
+          final int charWidth = (index + 1 < row + width && codePoints[index + 1] == WIDE_TAIL) ? 2 : 1;
+
+          output.appendCodePoint(codePoint);
+          lastCodePoints[index] = codePoint;
+          lastStyleIds[index] = cellStyleId;
+
+          if(charWidth == 2) {
+            lastCodePoints[index + 1] = WIDE_TAIL;
+            lastStyleIds[index + 1] = cellStyleId;
+          }
+
+          x += charWidth;
+          index += charWidth;
+        }
+
+        cursorRow = y;
+        // At the right edge, the terminal might wrap or not, so unknown.
+        cursorCol = (x < width) ? x : -1;
+      }
+    }
+
+    if(styleId > 0) {
+      output.append(Fansi.RESET);
+    }
+
+    lastOutputLength = output.length();
+
+    if(lastOutputLength > 0) {
+      fansi.beginFrame();
+
+      try {
+        fansi.print(output.toString());
+      }
+      finally {
+        fansi.endFrame();
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns the end of the run of changed cells from x, including gaps of
+   * unchanged cells that are cheaper to re-write than to move over.
+   * </pre>
+   */
+  private int findRunEnd(int row,int x) {
+    int end = x;
+    int gap = 0;
+
+    for(; x < width; ++x) {
+      if(isChanged(row + x)) {
+        end = x + 1;
+        gap = 0;
+      }
+      else if(++gap > MAX_REWRITE_GAP) {
+        break;
+      }
+    }
+
+    // Don't end in the middle of a wide char.
+    if(end < width && codePoints[row + end] == WIDE_TAIL) {
+      ++end;
+    }
+
+    return end;
+  }
+
+  private boolean isChanged(int index) {
+    return codePoints[index] != lastCodePoints[index] || styleIds[index] != lastStyleIds[index];
+  }
+
+  private void appendMove(int y,int x,int cursorRow,int cursorCol) {
+    if(cursorRow == y && cursorCol >= 0 && cursorCol < x) {
+      output.append("\u001b[").append(x - cursorCol).append('C');
+    }
+    else {
+      output.append("\u001b[").append(originRow + y).append(';').append(originCol + x).append('H');
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns the number of columns that the code point takes up in a
+   * terminal: 0 for control & zero-width chars, 2 for wide chars (East Asian
+   * wide/full-width & most emoji), else 1.
+   *
+   * This is an approximation of wcwidth(), which is good enough for chat.
+   * </pre>
+   */
+  public static int calcCharWidth(int codePoint) {
+    if(codePoint < 0x20 || (codePoint >= 0x7F && codePoint < 0xA0)) {
+      return 0;
+    }
+    if(codePoint < 0x300) {
+      return 1; // Fast path for Latin.
+    }
+
+    switch(Character.getType(codePoint)) {
+      case Character.NON_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+      case Character.FORMAT:
+        return 0;
+      default:
+        break;
+    }
+
+    if((codePoint >= 0x1100 && codePoint <= 0x115F) // Hangul Jamo.
+        || (codePoint >= 0x2E80 && codePoint <= 0xA4CF && codePoint != 0x303F) // CJK ... Yi.
+        || (codePoint >= 0xAC00 && codePoint <= 0xD7A3) // Hangul Syllables.
+        || (codePoint >= 0xF900 && codePoint <= 0xFAFF) // CJK Compatibility Ideographs.
+        || (codePoint >= 0xFE30 && codePoint <= 0xFE4F) // CJK Compatibility Forms.
+        || (codePoint >= 0xFF00 && codePoint <= 0xFF60) // Full-width Forms.
+        || (codePoint >= 0xFFE0 && codePoint <= 0xFFE6)
+        || (codePoint >= 0x1F300 && codePoint <= 0x1F64F) // Emoji & pictographs.
+        || (codePoint >= 0x1F900 && codePoint <= 0x1F9FF)
+        || (codePoint >= 0x20000 && codePoint <= 0x3FFFD)) { // CJK Extensions.
+      return 2;
+    }
+
+    return 1;
+  }
+
+  /**
+   * <pre>
+   * Sets where the screen is on the terminal, 1-based (the default is the
+   * top left: 1, 1), and invalidates it.
+   * </pre>
+   */
+  public void setOrigin(int row,int col) {
+    this.originRow = row;
+    this.originCol = col;
+
+    invalidate();
+  }
+
+  /**
+   * <pre>
+   * Caps how often render() actually renders; 0 or less for no cap.
+   * </pre>
+   */
+  public void setMaxFps(int maxFps) {
+    minFrameNanos = (maxFps > 0) ? (TimeUnit.SECONDS.toNanos(1) / maxFps) : 0;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * <pre>
+   * The number of chars written by the last render, such as for stats.
+   * </pre>
+   */
+  public int getLastOutputLength() {
+    return lastOutputLength;
+  }
+}
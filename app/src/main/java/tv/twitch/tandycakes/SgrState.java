@@ -0,0 +1,210 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+/**
+ * <pre>
+ * The effective SGR (Select Graphic Rendition) attributes of the terminal
+ * that Fansi knows about (bold, foreground, & background), for emitting only
+ * the codes that change between styles.
+ *
+ * Each attribute can be unknown, since the terminal could have been styled
+ * before (such as by an earlier unclosed "{bold"). If isClean, then no other
+ * attributes (such as underline) could be set.
+ *
+ * Immutable.
+ * </pre>
+ */
+final class SgrState {
+  public static final int UNKNOWN = -2;
+  public static final int DEFAULT = -1;
+
+  /** Nothing is known, such as at the start of a style() format. */
+  public static final SgrState UNKNOWN_STATE = new SgrState(UNKNOWN,UNKNOWN,UNKNOWN,false);
+  /** After a reset. */
+  public static final SgrState RESET_STATE = new SgrState(0,DEFAULT,DEFAULT,true);
+
+  private final int bold; // UNKNOWN, 0, or 1.
+  private final int fg; // UNKNOWN, DEFAULT, or the SGR code.
+  private final int bg; // UNKNOWN, DEFAULT, or the SGR code.
+  private final boolean isClean;
+
+  private SgrState(int bold,int fg,int bg,boolean isClean) {
+    this.bold = bold;
+    this.fg = fg;
+    this.bg = bg;
+    this.isClean = isClean;
+  }
+
+  /**
+   * <pre>
+   * Returns the state after the escape sequences of the style (such as
+   * "\u001b[1m\u001b[31m"), or null if the style has anything else in it,
+   * such as underline or 256 colors, which can't be tracked.
+   * </pre>
+   */
+  public SgrState apply(String style) {
+    final int length = style.length();
+    int bold = this.bold;
+    int fg = this.fg;
+    int bg = this.bg;
+    boolean isClean = this.isClean;
+
+    for(int i = 0; i < length; ) {
+      if(style.charAt(i) != '\u001b' || (i + 1) >= length || style.charAt(i + 1) != '[') {
+        return null;
+      }
+
+      i += 2; // Eat "\e[".
+
+      // Read each code in "\e[1;31m".
+      while(true) {
+        int code = 0;
+        int start = i;
+
+        for(char c; i < length && (c = style.charAt(i)) >= '0' && c <= '9'; ++i) {
+          code = (code * 10) + (c - '0');
+
+          if(code > 255) {
+            return null;
+          }
+        }
+
+        if(i >= length) {
+          return null;
+        }
+
+        if(start == i || code == 0) {
+          // "\e[m" is the same as "\e[0m".
+          bold = 0;
+          fg = DEFAULT;
+          bg = DEFAULT;
+          isClean = true;
+        }
+        else if(code == 1) {
+          bold = 1;
+        }
+        else if(code == 22) {
+          bold = 0;
+        }
+        else if(code == 39) {
+          fg = DEFAULT;
+        }
+        else if(code == 49) {
+          bg = DEFAULT;
+        }
+        else if(isFg(code)) {
+          fg = code;
+        }
+        else if(isBg(code)) {
+          bg = code;
+        }
+        else {
+          return null;
+        }
+
+        final char c = style.charAt(i++);
+
+        if(c == 'm') {
+          break;
+        }
+        if(c != ';') {
+          return null;
+        }
+      }
+    }
+
+    return new SgrState(bold,fg,bg,isClean);
+  }
+
+  /**
+   * <pre>
+   * Returns the fewest codes to change from this state to the target,
+   * merged into 1 escape sequence, or "" if there's no change.
+   *
+   * If this isn't clean, but the target is, then it must start with a reset.
+   * </pre>
+   */
+  public String transitionTo(SgrState target) {
+    if(!target.isClean) {
+      return toSequence(changesTo(target));
+    }
+
+    String codes = RESET_STATE.changesTo(target);
+    codes = codes.isEmpty() ? "0" : ("0;" + codes);
+
+    if(isClean) {
+      String changes = changesTo(target);
+
+      if(changes.length() <= codes.length()) {
+        codes = changes;
+      }
+    }
+
+    return toSequence(codes);
+  }
+
+  /**
+   * <pre>
+   * Returns each code that changes, such as "22;31".
+   * </pre>
+   */
+  private String changesTo(SgrState target) {
+    StringBuilder codes = new StringBuilder();
+
+    if(target.bold != UNKNOWN && target.bold != bold) {
+      codes.append((target.bold == 1) ? "1;" : "22;");
+    }
+    if(target.fg != UNKNOWN && target.fg != fg) {
+      codes.append((target.fg == DEFAULT) ? 39 : target.fg).append(';');
+    }
+    if(target.bg != UNKNOWN && target.bg != bg) {
+      codes.append((target.bg == DEFAULT) ? 49 : target.bg).append(';');
+    }
+
+    if(codes.length() > 0) {
+      codes.setLength(codes.length() - 1); // Remove the last ';'.
+    }
+
+    return codes.toString();
+  }
+
+  private static String toSequence(String codes) {
+    return codes.isEmpty() ? "" : ("\u001b[" + codes + "m");
+  }
+
+  private static boolean isFg(int code) {
+    return (code >= 30 && code <= 37) || (code >= 90 && code <= 97);
+  }
+
+  private static boolean isBg(int code) {
+    return (code >= 40 && code <= 47) || (code >= 100 && code <= 107);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(this == obj) {
+      return true;
+    }
+    if(!(obj instanceof SgrState)) {
+      return false;
+    }
+
+    SgrState other = (SgrState)obj;
+
+    return bold == other.bold && fg == other.fg && bg == other.bg && isClean == other.isClean;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = bold;
+    hash = (31 * hash) + fg;
+    hash = (31 * hash) + bg;
+    hash = (31 * hash) + (isClean ? 1 : 0);
+
+    return hash;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+/**
+ * <pre>
+ * An Aho-Corasick automaton, from LinkedTrie.compileScanner(), for finding
+ * every name/alias (such as banned phrases, emotes, and command keywords) in
+ * a text in a single pass, instead of doing a find() at each position.
+ *
+ * It's built on top of the nodes of an ArrayTrie, adding a failure link for
+ * each node (the node of the longest proper suffix that is also in the trie)
+ * and an output link (the next node along the failure links that has
+ * a value), so each char is only looked at once, and nothing is allocated
+ * per char.
+ *
+ * Only whole names/aliases match (not partials), but they can overlap and
+ * be anywhere in the text. The trie's ignoreCase and ignoreSpace are used,
+ * so with ignoreSpace, "b a d" also matches "bad".
+ *
+ * Example:
+ *   LinkedTrie<String> trie = new LinkedTrie<>(true,true,false);
+ *   trie.add("he",...); trie.add("she",...); trie.add("hers",...);
+ *
+ *   trie.compileScanner().scan("UShers",(start,end,value) -> {
+ *     // [1,4) "she"; [2,4) "he"; [2,6) "hers"
+ *     return true; // Continue.
+ *   });
+ * </pre>
+ */
+public class TrieScanner<V> {
+  private final ArrayTrie<V> trie;
+  private final int[] failLinks;
+  private final int[] outputLinks;
+  private final int[] depths;
+  private final int maxDepth;
+
+  TrieScanner(ArrayTrie<V> trie) {
+    final int nodeCount = trie.getNodeCount();
+
+    this.trie = trie;
+    this.failLinks = new int[nodeCount];
+    this.outputLinks = new int[nodeCount];
+    this.depths = new int[nodeCount];
+
+    int maxDepth = 0;
+
+    outputLinks[0] = -1;
+
+    // The nodes are numbered in breadth-first order, so parents (and all
+    //   shorter suffixes) are always done first.
+    for(int node = 0; node < nodeCount; ++node) {
+      final int firstEdge = trie.firstEdges[node];
+      final int lastEdge = trie.firstEdges[node + 1];
+
+      for(int edge = firstEdge; edge < lastEdge; ++edge) {
+        final int child = edge + 1;
+        final int codePoint = trie.edgeKeys[edge];
+        int fail = 0;
+
+        if(node != 0) {
+          fail = failLinks[node];
+
+          while(fail != 0 && trie.getChild(fail,codePoint) < 0) {
+            fail = failLinks[fail];
+          }
+
+          fail = Math.max(trie.getChild(fail,codePoint),0);
+        }
+
+        failLinks[child] = fail;
+        outputLinks[child] = (trie.valueIndexes[fail] != ArrayTrie.NO_VALUE) ? fail : outputLinks[fail];
+        depths[child] = depths[node] + 1;
+
+        if(depths[child] > maxDepth) {
+          maxDepth = depths[child];
+        }
+      }
+    }
+
+    this.maxDepth = maxDepth;
+  }
+
+  public boolean containsAny(CharSequence text) {
+    return scan(text,(start,end,value) -> false) > 0;
+  }
+
+  public int scan(CharSequence text,Listener<? super V> listener) {
+    return scan(text,0,text.length(),listener);
+  }
+
+  /**
+   * <pre>
+   * Scans text[start,end) and calls the listener for each match, in order of
+   * where each match ends (longest first for the same end).
+   *
+   * Returns the number of matches, including the one that stopped it.
+   * </pre>
+   */
+  public int scan(CharSequence text,int start,int end,Listener<? super V> listener) {
+    // A ring buffer of the indexes of the last code points, to get where a
+    //   match starts (with ignoreSpace, it's not just its length).
+    final int ringSize = Integer.highestOneBit(Math.max(maxDepth,1)) << 1;
+    final int ringMask = ringSize - 1;
+    final int[] ring = new int[ringSize];
+    int ringCount = 0;
+    int node = 0;
+    int count = 0;
+    int codePoint;
+
+    for(int i = start; i < end; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+      final int key = LinkedTrie.foldCodePoint(codePoint,trie.ignoreCase,trie.ignoreSpace);
+
+      if(key < 0) {
+        continue;
+      }
+
+      ring[ringCount & ringMask] = i;
+      ++ringCount;
+
+      int child;
+
+      while((child = trie.getChild(node,key)) < 0 && node != 0) {
+        node = failLinks[node];
+      }
+
+      node = Math.max(child,0);
+
+      final int matchEnd = i + Character.charCount(codePoint);
+
+      for(int match = (trie.valueIndexes[node] != ArrayTrie.NO_VALUE) ? node : outputLinks[node];
+          match > 0; match = outputLinks[match]) {
+        final int matchStart = ring[(ringCount - depths[match]) & ringMask];
+
+        ++count;
+
+        if(!listener.onMatch(matchStart,matchEnd,trie.getValue(trie.valueIndexes[match]))) {
+          return count;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  public ArrayTrie<V> getTrie() {
+    return trie;
+  }
+
+  @FunctionalInterface
+  public interface Listener<V> {
+    /**
+     * <pre>
+     * The match is text[start,end).
+     *
+     * Return false to stop scanning.
+     * </pre>
+     */
+    boolean onMatch(int start,int end,V value);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * <pre>
+ * The walks that LinkedTrie, ConcurrentLinkedTrie, and IntLinkedTrie share,
+ * which only differ in how their nodes store the children and the value.
+ *
+ * The walks return the found node (not its value), or null for the default
+ * value, so that IntLinkedTrie doesn't box. A node with a value always has
+ * it as its completion, so a found node always resolves to its completion.
+ * </pre>
+ */
+abstract class TrieWalker<N,V> {
+  abstract int getChildCount(N node);
+
+  abstract int getKey(N node,int index);
+
+  abstract N getChildAt(N node,int index);
+
+  abstract N getChild(N node,int codePoint);
+
+  abstract V getValue(N node);
+
+  boolean hasValue(N node) {
+    return getValue(node) != null;
+  }
+
+  /**
+   * See LinkedTrie.find().
+   */
+  N find(N root,CharSequence text,int start,int end,boolean allowLonger,boolean ignoreCase,boolean ignoreSpace) {
+    if(start >= end) {
+      return null;
+    }
+
+    N node = root;
+    int codePoint;
+
+    for(int i = start; i < end; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+      final int key = LinkedTrie.foldCodePoint(codePoint,ignoreCase,ignoreSpace);
+
+      if(key < 0) {
+        continue;
+      }
+
+      N child = getChild(node,key);
+
+      if(child == null) {
+        // If allowLonger and the partial to find is "helpme", but the only name
+        //   found is "help", then return the value of "help".
+        // This allows a user to be more verbose than necessary.
+        return (allowLonger && hasValue(node)) ? node : null;
+      }
+
+      node = child;
+    }
+
+    // If the partial to find is "ver" and the only name that starts with that
+    //   is "version", then return the value of "version".
+    // If there are 2 names that start with "ver", then just return the
+    //   default value, since it's ambiguous,
+    //   for example "version" and "verbose".
+    // This is precomputed in each node's completion.
+    return (node != root) ? node : null;
+  }
+
+  /**
+   * <pre>
+   * See LinkedTrie.findTokens().
+   *
+   * Gives each token's node (or null) and index to the consumer, instead of
+   * storing the values, and returns the number of tokens (up to maxCount).
+   * </pre>
+   */
+  int findTokens(N root,CharSequence text,int start,int end,int maxCount,boolean allowLonger,boolean ignoreCase
+      ,ObjIntConsumer<N> consumer) {
+    int count = 0;
+    N node = null; // Null if not in a token.
+    N longerNode = null;
+    boolean isLonger = false;
+    int codePoint;
+
+    for(int i = start; i < end && count < maxCount; i += Character.charCount(codePoint)) {
+      codePoint = LinkedTrie.codePointAt(text,i,end);
+
+      if(Character.isWhitespace(codePoint)) {
+        if(node != null) {
+          consumer.accept(isLonger ? longerNode : node,count++);
+          node = null;
+        }
+
+        continue;
+      }
+
+      if(node == null) {
+        node = root;
+        isLonger = false;
+      }
+      else if(isLonger) {
+        continue; // Already resolved; just eat the rest of the token.
+      }
+
+      N child = getChild(node,LinkedTrie.foldCodePoint(codePoint,ignoreCase,false));
+
+      if(child == null) {
+        // Same as find().
+        isLonger = true;
+        longerNode = (allowLonger && hasValue(node)) ? node : null;
+      }
+      else {
+        node = child;
+      }
+    }
+
+    if(node != null && count < maxCount) {
+      consumer.accept(isLonger ? longerNode : node,count++);
+    }
+
+    return count;
+  }
+
+  /**
+   * <pre>
+   * See LinkedTrie.findFuzzy().
+   *
+   * Offers the value of each node below the node that is still within the
+   * search's distance, skipping the subtrees that can't be.
+   * </pre>
+   */
+  void findFuzzy(N node,int depth,FuzzySearch<V> search) {
+    final int childCount = getChildCount(node);
+
+    for(int i = 0; i < childCount; ++i) {
+      if(search.step(depth,getKey(node,i))) {
+        N child = getChildAt(node,i);
+
+        if(hasValue(child)) {
+          search.offer(depth + 1,getValue(child));
+        }
+
+        findFuzzy(child,depth + 1,search);
+      }
+    }
+  }
+}
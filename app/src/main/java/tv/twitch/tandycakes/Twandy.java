@@ -13,7 +13,6 @@ import tv.twitch.tandycakes.error.CrimException;
 
 import java.awt.Point;
 import java.util.LinkedHashMap;
-import java.util.Locale;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -32,22 +31,29 @@ public class Twandy extends Crim {
     }
   }
 
+  // Only for diagnostics; user-facing output goes to fansi, in order.
+  private final Logger log = new Logger("twandy");
+
   // Java note: Runnable is also a functional interface.
   private final Map<String,Consumer<CommandData>> gameNames = MapMaker.make(
       new LinkedHashMap<>(),(map) -> {
-        // These must be lower-cased without spaces.
+        // These must be lower-cased (or case folded) without spaces.
         map.put("solarus",this::playSolarus);
         map.put("lichess",this::playLichess);
       });
-  private final LinkedTrie<String> gameNameTrie = new LinkedTrie<>();
+  private final ArrayTrie<String> gameNameTrie;
 
   public Twandy() {
     super("twandy","0.3.0");
 
+    // Ignore case, so that "play Lichess" works.
+    LinkedTrie<String> gameNameTrie = new LinkedTrie<>(true,true,false);
+
     root.about("{bold/white Tandy, have you had your cake today? }");
 
     root.command("x","coords")
         .summary("Show coords of cursor.")
+        .interactive()
         .run(this::showCoords);
 
     root.command("play <game>")
@@ -62,7 +68,12 @@ public class Twandy extends Crim {
         .option("--fhat","-f")
         .summary("Run filtered chat.");
 
+    // The game names never change, so compile for faster lookups.
+    this.gameNameTrie = gameNameTrie.compile();
+
     addDefaults();
+    addShellCommand();
+    addDaemonCommand();
   }
 
   public void showCoords(Crim crim,Command cmd,CommandData data) {
@@ -80,7 +91,7 @@ public class Twandy extends Crim {
 
       fansi.srintf(" %s{bold/btWhite %d }: ( x: {bold/btBlue %4d }, y: {bold/btBlue %4d } )"
           ,numPrefix,i,coords.x,coords.y);
-      String input = stdin.nextLine();
+      String input = stdin().nextLine();
 
       if(!input.isEmpty()) {
         break;
@@ -97,8 +108,6 @@ public class Twandy extends Crim {
       throw new CrimException("No <game> arg.");
     }
 
-    gameArg = gameArg.toLowerCase(Locale.ROOT);
-
     String game = gameNameTrie.find(gameArg,"");
     Consumer<CommandData> runner = gameNames.get(game);
 
@@ -106,15 +115,16 @@ public class Twandy extends Crim {
       throw new CrimException(Formatter.format("Invalid <game> arg: '{}'.",gameArg));
     }
 
+    log.debug("Resolved <game> arg '{}' to '{}'.",gameArg,game);
     runner.accept(data);
   }
 
   public void playSolarus(CommandData data) {
-    System.out.println("Playing solarus...");
+    fansi.println("Playing solarus...");
   }
 
   public void playLichess(CommandData data) {
-    System.out.println("Playing lichess...");
+    fansi.println("Playing lichess...");
   }
 }
 
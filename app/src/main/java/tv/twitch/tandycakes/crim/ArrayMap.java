@@ -0,0 +1,246 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <pre>
+ * A small, insertion-ordered map backed by 1 array of [key, value] pairs,
+ * for CommandData, which only ever has a few opts/args per parse.
+ *
+ * Finding a key is a linear scan, which for a few keys is faster than
+ * hashing, and uses 1 array instead of a table & an entry per key like
+ * LinkedHashMap. The array isn't allocated until the first put().
+ *
+ * Like LinkedHashMap, putting an existing key keeps its original order.
+ * Not thread-safe.
+ * </pre>
+ */
+final class ArrayMap<K,V> extends AbstractMap<K,V> {
+  private static final Object[] EMPTY_PAIRS = {};
+  private static final int MIN_CAPACITY = 4;
+
+  private Object[] pairs = EMPTY_PAIRS;
+  private int size = 0;
+  private int modCount = 0;
+
+  private int indexOf(Object key) {
+    final int end = size << 1;
+
+    for(int i = 0; i < end; i += 2) {
+      if(Objects.equals(pairs[i],key)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    final int index = indexOf(key);
+
+    return (index >= 0) ? (V)pairs[index + 1] : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key,V value) {
+    final int index = indexOf(key);
+
+    if(index >= 0) {
+      V oldValue = (V)pairs[index + 1];
+      pairs[index + 1] = value;
+
+      return oldValue;
+    }
+
+    final int end = size << 1;
+
+    if(end >= pairs.length) {
+      pairs = Arrays.copyOf(pairs,Math.max(MIN_CAPACITY << 1,pairs.length << 1));
+    }
+
+    pairs[end] = key;
+    pairs[end + 1] = value;
+    ++size;
+    ++modCount;
+
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    final int index = indexOf(key);
+
+    if(index < 0) {
+      return null;
+    }
+
+    V oldValue = (V)pairs[index + 1];
+    removeAt(index);
+
+    return oldValue;
+  }
+
+  private void removeAt(int index) {
+    final int end = size << 1;
+
+    System.arraycopy(pairs,index + 2,pairs,index,end - index - 2);
+    pairs[end - 2] = null;
+    pairs[end - 1] = null;
+    --size;
+    ++modCount;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(pairs,0,size << 1,null);
+    size = 0;
+    ++modCount;
+  }
+
+  @Override
+  public Set<Map.Entry<K,V>> entrySet() {
+    return new EntrySet();
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      ArrayMap.this.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<K,V>> iterator() {
+      return new EntryIterator();
+    }
+  }
+
+  private final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+    private int next = 0; // Index of the next pair.
+    private int last = -1; // Index of the last pair returned, for remove().
+    private int expectedModCount = modCount;
+
+    @Override
+    public boolean hasNext() {
+      return next < (size << 1);
+    }
+
+    @Override
+    public Map.Entry<K,V> next() {
+      if(modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      last = next;
+      next += 2;
+
+      return new Entry(last);
+    }
+
+    @Override
+    public void remove() {
+      if(last < 0) {
+        throw new IllegalStateException();
+      }
+      if(modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      removeAt(last);
+      next = last;
+      last = -1;
+      expectedModCount = modCount;
+    }
+  }
+
+  /**
+   * <pre>
+   * A view of the pair at index, which is only valid until the map is
+   * structurally changed (like LinkedHashMap's iterator entries).
+   * </pre>
+   */
+  private final class Entry implements Map.Entry<K,V> {
+    private final int index;
+
+    private Entry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K getKey() {
+      return (K)pairs[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getValue() {
+      return (V)pairs[index + 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V setValue(V value) {
+      V oldValue = (V)pairs[index + 1];
+      pairs[index + 1] = value;
+
+      return oldValue;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(!(obj instanceof Map.Entry<?,?> other)) {
+        return false;
+      }
+
+      return Objects.equals(getKey(),other.getKey()) && Objects.equals(getValue(),other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+  }
+}
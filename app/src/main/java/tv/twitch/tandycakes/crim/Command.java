@@ -8,6 +8,7 @@ package tv.twitch.tandycakes.crim;
 import tv.twitch.tandycakes.Formatter;
 import tv.twitch.tandycakes.LinkedTrie;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
@@ -15,6 +16,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
@@ -30,17 +32,26 @@ public class Command {
   public final String[] aliases;
   public final String[] argNames;
   public boolean isMultiArg = false;
+  public boolean isInteractive = false;
 
   public final List<String> summary = new LinkedList<>();
   public final List<String> about = new LinkedList<>();
 
-  public final Map<String,Option> options = new LinkedHashMap<>();
-  public final LinkedTrie<Option> optionTrie = new LinkedTrie<>(false);
+  // Read-only, so that all changes go through option()/command(), which keep
+  //   the tries & the edit count (for the scope indexes) in sync.
+  private final Map<String,Option> optionMap = new LinkedHashMap<>();
+  public final Map<String,Option> options = Collections.unmodifiableMap(optionMap);
+  final LinkedTrie<Option> optionTrie = new LinkedTrie<>(false);
 
-  public final Map<String,Command> subcommands = new LinkedHashMap<>();
-  public final LinkedTrie<Command> subcommandTrie = new LinkedTrie<>();
+  private final Map<String,Command> subcommandMap = new LinkedHashMap<>();
+  public final Map<String,Command> subcommands = Collections.unmodifiableMap(subcommandMap);
+  final LinkedTrie<Command> subcommandTrie = new LinkedTrie<>();
 
   private Command parent = null;
+  // Only used if this is a root. Bumped when any command in this tree changes,
+  //   which thaws the scope indexes of only this tree.
+  private final AtomicLong editCount = new AtomicLong();
+  volatile ScopeIndex scopeIndex = null;
 
   public static String[] split(String cmdAndArgs) {
     return ARG_PATTERN.split(cmdAndArgs);
@@ -82,7 +93,11 @@ public class Command {
       throw new IllegalArgumentException("Null parent.");
     }
 
+    // The scopes of this tree change for both the old & the new root.
+    bumpEditCount();
     this.parent = parent;
+    bumpEditCount();
+
     return this;
   }
 
@@ -101,6 +116,17 @@ public class Command {
     return this;
   }
 
+  /**
+   * <pre>
+   * For a command that reads stdin or otherwise needs the local terminal,
+   * such as a REPL, so that CrimDaemon tells its clients to run it locally.
+   * </pre>
+   */
+  public Command interactive() {
+    isInteractive = true;
+    return this;
+  }
+
   public Command summary(String line) {
     summary.add(line);
     return this;
@@ -128,37 +154,110 @@ public class Command {
   public Option option(String name,String alias) {
     var option = new Option(name,alias).parent(this);
 
-    if(options.containsKey(option.name)) {
+    if(optionMap.containsKey(option.name)) {
       throw new IllegalArgumentException(Formatter.format("Duplicate option: '{}'.",option.name));
     }
 
-    options.put(option.name,option);
+    optionMap.put(option.name,option);
     optionTrie.add(option.name,option);
 
     if(option.alias != null) {
       optionTrie.addAlias(option,option.alias);
     }
 
+    bumpEditCount();
+
     return option;
   }
 
   public Command command(String name,String... aliases) {
     var sub = new Command(name,aliases).parent(this);
 
-    if(subcommands.containsKey(sub.name)) {
+    if(subcommandMap.containsKey(sub.name)) {
       throw new IllegalArgumentException(Formatter.format("Duplicate command: '{}'.",sub.name));
     }
 
-    subcommands.put(sub.name,sub);
+    subcommandMap.put(sub.name,sub);
     subcommandTrie.add(sub.name,sub);
 
     if(sub.hasAliases()) {
       subcommandTrie.addAlias(sub,sub.aliases);
     }
 
+    bumpEditCount();
+
     return sub;
   }
 
+  /**
+   * <pre>
+   * Freezes the option scopes of this command & all of its subcommands into
+   * a ScopeIndex each, so that parsing resolves each option with 1 lookup,
+   * no matter how deep the command is.
+   *
+   * This doesn't stop changes. If any command in this tree or in
+   * globalOptions is changed (option(), command(), or parent()) after, the
+   * indexes of this tree are thawed (ignored) & parsing just looks in each
+   * scope again, until frozen again. Other trees aren't affected.
+   *
+   * This should be called on the root, as the parents of this command
+   * (if any) aren't included as scopes.
+   * </pre>
+   */
+  public void freeze(Command globalOptions) {
+    final Command root = findRoot();
+    final Command globalRoot = (globalOptions != null) ? globalOptions.findRoot() : null;
+    // Get the counts before building, so that a change while building thaws it.
+    final long editCount = root.getEditCount();
+    final long globalEditCount = (globalRoot != null) ? globalRoot.getEditCount() : 0;
+
+    freeze(new ScopeIndex.Stamp(root,editCount,globalOptions,globalRoot,globalEditCount),new ArrayDeque<>());
+  }
+
+  private void freeze(ScopeIndex.Stamp stamp,Deque<Command> parentCommands) {
+    scopeIndex = new ScopeIndex(this,parentCommands,stamp);
+
+    parentCommands.addFirst(this);
+
+    for(Command sub: subcommandMap.values()) {
+      sub.freeze(stamp,parentCommands);
+    }
+
+    parentCommands.removeFirst();
+  }
+
+  /**
+   * Returns null if not frozen or if thawed.
+   */
+  ScopeIndex getScopeIndex(Command globalOptions) {
+    ScopeIndex index = scopeIndex;
+
+    return (index != null && index.isFresh(globalOptions)) ? index : null;
+  }
+
+  private void bumpEditCount() {
+    findRoot().editCount.incrementAndGet();
+  }
+
+  /**
+   * <pre>
+   * The number of changes to the tree of this root (see freeze()).
+   * </pre>
+   */
+  long getEditCount() {
+    return editCount.get();
+  }
+
+  Command findRoot() {
+    Command root = this;
+
+    while(root.parent != null) {
+      root = root.parent;
+    }
+
+    return root;
+  }
+
   public Command tap(Consumer<Command> tapper) {
     tapper.accept(this);
     return this;
@@ -7,12 +7,14 @@ package tv.twitch.tandycakes.crim;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * <pre>
  * Wow, I used a record, so cool, Java 14+. Happy now?
+ *
+ * The maps are array-backed (see ArrayMap), since there are only ever a few
+ * opts/args per parse, & a new CommandData is made for every parse.
  * </pre>
  */
 public record CommandData(
@@ -21,12 +23,14 @@ public record CommandData(
     ,Map<String,String> args
     ,Deque<String> multiArgs
 ) {
+  private static final int MULTI_ARGS_CAPACITY = 4;
+
   public CommandData() {
     this(
-        new LinkedHashMap<>()
-        ,new LinkedHashMap<>()
-        ,new LinkedHashMap<>()
-        ,new ArrayDeque<>()
+        new ArrayMap<>()
+        ,new ArrayMap<>()
+        ,new ArrayMap<>()
+        ,new ArrayDeque<>(MULTI_ARGS_CAPACITY)
     );
   }
 }
@@ -6,7 +6,11 @@
 package tv.twitch.tandycakes.crim;
 
 import tv.twitch.tandycakes.Fansi;
+import tv.twitch.tandycakes.Formatter;
+import tv.twitch.tandycakes.error.CrimException;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
@@ -24,6 +28,7 @@ public class Crim {
   // TODO: break out showCommand() into own class, like CrimParser? so can set/use different formatters
 
   public final Scanner stdin = new Scanner(System.in);
+  private final ThreadLocal<Scanner> threadStdin = new ThreadLocal<>();
   public final Fansi fansi = new Fansi();
 
   public final String appName;
@@ -31,6 +36,8 @@ public class Crim {
   public final Command root;
   public final Command globalOptions;
 
+  private final CrimParser parser;
+
   public Crim(String appName,String appVersion) {
     this(appName,appVersion,null);
   }
@@ -41,6 +48,7 @@ public class Crim {
     this.root = new Command(appName).run(this::runRootCommand);
     // NOTE: Do NOT use this/root.addCommand().
     this.globalOptions = new Command("__GLOBAL_OPTIONS__").parent(this.root);
+    this.parser = new CrimParser(this.root,this.globalOptions);
 
     if(summary != null) {
       this.root.summary(summary);
@@ -79,6 +87,44 @@ public class Crim {
                .run(this::runHelpCommand);
   }
 
+  /**
+   * <pre>
+   * Not in addDefaults(), since not every app wants a shell.
+   * </pre>
+   */
+  public Command addShellCommand() {
+    return root.command("shell")
+               .summary("Run commands interactively.")
+               .about(
+                   "Builtins: exit, quit, history, !!, !n"
+                   ,"Press Tab & then Enter to list completions."
+               )
+               .interactive()
+               .run(this::runShellCommand)
+               .option("--time","-t")
+               .summary("Show how long each command took.")
+               .end_option();
+  }
+
+  /**
+   * <pre>
+   * Not in addDefaults(), since not every app wants a daemon.
+   * </pre>
+   */
+  public Command addDaemonCommand() {
+    return root.command("daemon")
+               .summary("Serve commands to the client script on a Unix socket.")
+               .about(
+                   "Keeps the app warm, so that each call doesn't pay for JVM startup."
+                   ,"Stop it with Ctrl+C."
+               )
+               .interactive()
+               .run(this::runDaemonCommand)
+               .option("--socket <file>","-s")
+               .summary("The socket file (default: <app>-<user>.sock in $XDG_RUNTIME_DIR, $TMPDIR, or /tmp).")
+               .end_option();
+  }
+
   public void runRootCommand(Crim crim,Command cmd,CommandData data) {
     crim.showHelp();
   }
@@ -106,23 +152,113 @@ public class Crim {
     crim.showHelp(cmdToShow);
   }
 
-  public void parse(String... mainArgs) {
-    CrimParser parser = new CrimParser(root,globalOptions,mainArgs);
-    CommandRunner runner = parser.parse();
+  public void runShellCommand(Crim crim,Command cmd,CommandData data) {
+    new CrimShell(crim)
+        .setShowTime(data.opts().containsKey("--time"))
+        .run();
+  }
+
+  public void runDaemonCommand(Crim crim,Command cmd,CommandData data) {
+    if(CrimDaemon.isClientThread()) {
+      throw new CrimException("Already in the daemon.");
+    }
+
+    String socketFile = data.opts().get("--socket");
+    Path file = (socketFile != null) ? Path.of(socketFile) : CrimDaemon.buildDefaultSocketFile(appName);
 
+    try {
+      CrimDaemon daemon = new CrimDaemon(crim,file);
+
+      // For Ctrl+C, so that the socket file is deleted.
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          daemon.close();
+        }
+        catch(IOException e) {
+          // Exiting anyway.
+        }
+      },appName + "-daemon-shutdown"));
+
+      fansi.srintln("Listening on {arg {} }.",file);
+      daemon.run();
+    }
+    catch(IOException e) {
+      throw new CrimException(Formatter.format("Daemon failed on '{}': {}",file,e.getLocalizedMessage()));
+    }
+  }
+
+  /**
+   * <pre>
+   * Thread-safe, so many threads (such as chat users) can parse & run
+   * commands with the same Crim at once, as long as the commands/options
+   * aren't changed while parsing.
+   * </pre>
+   */
+  public void parse(String... mainArgs) {
     // The runner might not be set, as the user is just setting the
     //   initial skeleton for testing.
-    if(runner != null) {
-      runner.run(this,parser.command,parser.commandData);
+    parser.parse(mainArgs).run(this);
+  }
+
+  /**
+   * <pre>
+   * Freezes all of the commands' option scopes for faster parsing
+   * (see Command.freeze()), such as before parsing many commands from chat.
+   *
+   * Not needed to parse just once, such as the main args, as the parser
+   * falls back to looking in each scope (which is also done if any command
+   * is changed after freezing).
+   * </pre>
+   */
+  public void freeze() {
+    root.freeze(globalOptions);
+  }
+
+  /**
+   * <pre>
+   * Overrides stdin for only this thread (or null to stop), such as for each
+   * client of a daemon, so that a command can't read the daemon's stdin.
+   * </pre>
+   */
+  public void setThreadStdin(Scanner stdin) {
+    if(stdin != null) {
+      threadStdin.set(stdin);
+    }
+    else {
+      threadStdin.remove();
     }
   }
 
+  /**
+   * <pre>
+   * Returns this thread's stdin (see setThreadStdin()), else stdin.
+   * Commands should use this to read input, instead of stdin directly.
+   * </pre>
+   */
+  public Scanner stdin() {
+    Scanner stdin = threadStdin.get();
+
+    return (stdin != null) ? stdin : this.stdin;
+  }
+
+  public CrimParser getParser() {
+    return parser;
+  }
+
   public void showHelp() {
     showHelp(root);
   }
 
   public void showHelp(Command command) {
-    showCommand(command);
+    // Write the whole help screen at once.
+    fansi.beginFrame();
+
+    try {
+      showCommand(command);
+    }
+    finally {
+      fansi.endFrame();
+    }
   }
 
   public void showHelpAndError(String errorMessage) {
@@ -130,10 +266,17 @@ public class Crim {
   }
 
   public void showHelpAndError(Command command,String errorMessage) {
-    showHelp(command);
+    fansi.beginFrame();
 
-    fansi.srintln();
-    fansi.srintln("{err ERROR }: {}",(errorMessage != null) ? errorMessage : "Unknown error.");
+    try {
+      showHelp(command);
+
+      fansi.srintln();
+      fansi.srintln("{err ERROR }: {}",(errorMessage != null) ? errorMessage : "Unknown error.");
+    }
+    finally {
+      fansi.endFrame();
+    }
   }
 
   public void showCommand(Command command) {
@@ -256,19 +399,13 @@ public class Crim {
       else {
         final Iterator<String> it = summary.iterator();
 
-        for(int len = (maxLen - lens[index]); len > 0; --len) {
-          fansi.print(" ");
-        }
+        fansi.pad(maxLen - lens[index]);
 
         // Use srintln() so can optionally add style to summary lines.
         fansi.srintln(it.next());
 
         while(it.hasNext()) {
-          fansi.print("  "); // Indent.
-
-          for(int i = 0; i < maxLen; ++i) {
-            fansi.print(" ");
-          }
+          fansi.pad(2 + maxLen); // Indent.
 
           // Use srintln() so can optionally add style to summary lines.
           fansi.srintln(it.next());
@@ -339,19 +476,13 @@ public class Crim {
       else {
         final Iterator<String> it = opt.summary.iterator();
 
-        for(int len = (maxLen - lens[index]); len > 0; --len) {
-          fansi.print(" ");
-        }
+        fansi.pad(maxLen - lens[index]);
 
         // Use srintln() so can optionally add style to summary lines.
         fansi.srintln(it.next());
 
         while(it.hasNext()) {
-          fansi.print("  "); // Indent.
-
-          for(int i = 0; i < maxLen; ++i) {
-            fansi.print(" ");
-          }
+          fansi.pad(2 + maxLen); // Indent.
 
           // Use srintln() so can optionally add style to summary lines.
           fansi.srintln(it.next());
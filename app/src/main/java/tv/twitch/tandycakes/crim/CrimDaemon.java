@@ -0,0 +1,484 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import tv.twitch.tandycakes.Formatter;
+import tv.twitch.tandycakes.error.CrimException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * Keeps 1 warm Crim & runs the commands of clients (such as the "twandy"
+ * script) that connect to a Unix domain socket, so each call doesn't pay
+ * for JVM startup, class loading, & building the commands again.
+ *
+ * Only 1 daemon can run per socket file, which is ensured by holding a lock
+ * on "<socket file>.lock" for the daemon's lifetime (see lock()).
+ *
+ * Each client is run on its own (virtual, if Java 21+) thread, with its own
+ * Fansi out (see Fansi.setThreadOut()), empty stdin (see Crim.stdin()), &
+ * CommandData (see CrimParser).
+ *
+ * The command is resolved first, & if it's interactive (see
+ * Command.interactive()), such as "shell", then it isn't run, & the exit code
+ * is RUN_LOCALLY_EXIT_CODE, so that the client runs it in a new JVM instead.
+ *
+ * Protocol (1 command per connection):
+ *   Request:  "<arg count>\n" & then each arg (UTF-8) ending with "\0".
+ *   Response: each line of stdout as "1 <line>\n" & of stderr as
+ *             "2 <line>\n", or "1-<text>\n"/"2-<text>\n" for text that was
+ *             flushed without a newline (so don't print one), & lastly
+ *             "x <exit code>\n" (see RUN_LOCALLY_EXIT_CODE).
+ *
+ * Example:
+ *   Request:  "2\nplay\0sol\0"
+ *   Response: "1 ...\n" ... "x 0\n"
+ * </pre>
+ */
+public class CrimDaemon implements AutoCloseable {
+  public static final int MAX_ARGS = 1024;
+  public static final int MAX_ARGS_BYTES = 1024 * 1024;
+  /** The command needs the local terminal, so run it in a new JVM (nothing was output). */
+  public static final int RUN_LOCALLY_EXIT_CODE = 75;
+
+  // So that "daemon" can't be run by a client.
+  private static final ThreadLocal<CrimDaemon> CURRENT = new ThreadLocal<>();
+
+  public final Crim crim;
+  public final Path socketFile;
+  public final Path lockFile;
+
+  private final FileChannel lockChannel;
+  private final ExecutorService executor;
+  private final ServerSocketChannel server;
+
+  public CrimDaemon(Crim crim,Path socketFile) throws IOException {
+    if(crim == null) {
+      throw new IllegalArgumentException("Null crim.");
+    }
+    if(socketFile == null) {
+      throw new IllegalArgumentException("Null socket file.");
+    }
+
+    this.crim = crim;
+    this.socketFile = socketFile;
+    this.lockFile = socketFile.resolveSibling(socketFile.getFileName() + ".lock");
+    this.lockChannel = lock(lockFile,socketFile);
+
+    ServerSocketChannel server = null;
+
+    try {
+      // Only checked & bound while holding the lock, so no other daemon can
+      //   be doing the same in between.
+      if(Files.exists(socketFile)) {
+        if(isListening(UnixDomainSocketAddress.of(socketFile))) {
+          // Such as a daemon from an older version (without the lock).
+          throw new CrimException(Formatter.format("Daemon already running on '{}'.",socketFile));
+        }
+
+        // Left over from a daemon that was killed.
+        Files.delete(socketFile);
+      }
+
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      bindPrivately(server,socketFile);
+    }
+    catch(IOException | RuntimeException e) {
+      if(server != null) {
+        server.close();
+      }
+
+      lockChannel.close();
+      throw e;
+    }
+
+    this.server = server;
+    this.executor = newExecutor(crim.appName + "-daemon-");
+  }
+
+  /**
+   * <pre>
+   * Opens the lock file (0600) & locks it, which the OS releases if the
+   * daemon is killed, so a stale lock file is just reused.
+   *
+   * The lock file is never deleted, else a daemon could lock the old file
+   * (already opened) while another daemon locks a new one.
+   *
+   * Throws a CrimException if another daemon (in any JVM) has it locked.
+   * </pre>
+   */
+  private static FileChannel lock(Path lockFile,Path socketFile) throws IOException {
+    FileChannel channel = FileChannel.open(lockFile,Set.of(StandardOpenOption.CREATE,StandardOpenOption.WRITE)
+        ,PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    FileLock lock;
+
+    try {
+      lock = channel.tryLock();
+    }
+    catch(OverlappingFileLockException e) {
+      lock = null; // Locked by this JVM.
+    }
+    catch(IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+
+    if(lock == null) {
+      channel.close();
+      throw new CrimException(Formatter.format("Daemon already running on '{}'.",socketFile));
+    }
+
+    return channel;
+  }
+
+  /**
+   * <pre>
+   * Binds the server to the socket file, so that only this user can ever
+   * connect (& run commands).
+   *
+   * A socket file is created with the umask's permissions, so it's bound in
+   * a new 0700 dir next to it first, then made 0600, & only then linked to
+   * the socket file. So there's no window where another user can connect,
+   * even in a shared dir like /tmp.
+   *
+   * A hard link (unlike a move) never replaces an existing socket file, so
+   * if one appeared anyway, this fails instead of taking over its clients.
+   * </pre>
+   */
+  private static void bindPrivately(ServerSocketChannel server,Path socketFile) throws IOException {
+    final Path dir = socketFile.toAbsolutePath().getParent();
+    final Path privateDir = Files.createTempDirectory(dir,".sock"
+        ,PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    final Path privateFile = privateDir.resolve("s");
+
+    try {
+      server.bind(UnixDomainSocketAddress.of(privateFile));
+      Files.setPosixFilePermissions(privateFile,PosixFilePermissions.fromString("rw-------"));
+      Files.createLink(socketFile,privateFile);
+    }
+    finally {
+      Files.deleteIfExists(privateFile);
+      Files.deleteIfExists(privateDir);
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns "<app>-<user>.sock" in the first dir of: $XDG_RUNTIME_DIR,
+   * $TMPDIR, & "/tmp" (not java.io.tmpdir, so that the script can use the
+   * exact same rule), unless overridden by the env var "<APP>_SOCKET".
+   *
+   * The "twandy" script uses the same.
+   * </pre>
+   */
+  public static Path buildDefaultSocketFile(String appName) {
+    String file = System.getenv(appName.toUpperCase() + "_SOCKET");
+
+    if(file != null && !file.isEmpty()) {
+      return Path.of(file);
+    }
+
+    String dir = System.getenv("XDG_RUNTIME_DIR");
+
+    if(dir == null || dir.isEmpty()) {
+      dir = System.getenv("TMPDIR");
+    }
+    if(dir == null || dir.isEmpty()) {
+      dir = "/tmp";
+    }
+
+    return Path.of(dir,appName + "-" + System.getProperty("user.name") + ".sock");
+  }
+
+  /**
+   * <pre>
+   * Uses virtual threads if Java 21+ (by reflection, since this is built for
+   * Java 17), else a cached pool of daemon threads.
+   * </pre>
+   */
+  public static ExecutorService newExecutor(String threadNamePrefix) {
+    try {
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch(ReflectiveOperationException e) {
+      final AtomicInteger threadCount = new AtomicInteger();
+
+      return Executors.newCachedThreadPool((Runnable task) -> {
+        Thread thread = new Thread(task,threadNamePrefix + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+      });
+    }
+  }
+
+  public static boolean isClientThread() {
+    return CURRENT.get() != null;
+  }
+
+  private static boolean isListening(UnixDomainSocketAddress address) {
+    try {
+      SocketChannel.open(address).close();
+      return true;
+    }
+    catch(IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * <pre>
+   * Accepts clients until closed.
+   * </pre>
+   */
+  public void run() throws IOException {
+    // Parsed many times, so worth it.
+    crim.freeze();
+
+    while(true) {
+      SocketChannel client;
+
+      try {
+        client = server.accept();
+      }
+      catch(ClosedChannelException e) {
+        break; // Closed.
+      }
+
+      executor.execute(() -> runClient(client));
+    }
+  }
+
+  private void runClient(SocketChannel client) {
+    try(client) {
+      InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+      OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(client));
+      // Both write to raw, so autoflush each line/chunk, so that it streams back.
+      PrintStream stdout = new PrintStream(new LineOutputStream(raw,'1'),true,StandardCharsets.UTF_8);
+      PrintStream stderr = new PrintStream(new LineOutputStream(raw,'2'),true,StandardCharsets.UTF_8);
+      int exitCode;
+
+      try {
+        exitCode = runCommand(readArgs(in),stdout,stderr);
+      }
+      catch(IOException e) {
+        stderr.println(Formatter.format("Bad request: {}",e.getLocalizedMessage()));
+        exitCode = 2;
+      }
+
+      stdout.flush();
+      stderr.flush();
+
+      synchronized(raw) {
+        raw.write(("x " + exitCode + "\n").getBytes(StandardCharsets.US_ASCII));
+        raw.flush();
+      }
+    }
+    catch(IOException e) {
+      // The client went away, so no one to tell.
+    }
+  }
+
+  /**
+   * <pre>
+   * Like main(): shows the help & error if the args are invalid (exit code 0),
+   * but if the command fails, shows the stack trace (exit code 1).
+   *
+   * If the command is interactive (& there's no option runner, such as
+   * "--help"), then it isn't run (RUN_LOCALLY_EXIT_CODE).
+   * </pre>
+   */
+  private int runCommand(String[] args,PrintStream stdout,PrintStream stderr) {
+    CURRENT.set(this);
+    crim.fansi.setThreadOut(stdout);
+    crim.setThreadStdin(new Scanner(InputStream.nullInputStream()));
+
+    try {
+      try {
+        CrimParser.Result result = crim.getParser().parse(args);
+
+        if(result.optionToRun() == null && result.command().isInteractive) {
+          return RUN_LOCALLY_EXIT_CODE;
+        }
+
+        result.run(crim);
+      }
+      catch(CrimException e) {
+        crim.showHelpAndError(e.getLocalizedMessage());
+      }
+
+      return 0;
+    }
+    catch(RuntimeException e) {
+      e.printStackTrace(stderr);
+      return 1;
+    }
+    finally {
+      crim.setThreadStdin(null);
+      crim.fansi.setThreadOut(null);
+      CURRENT.remove();
+    }
+  }
+
+  private static String[] readArgs(InputStream in) throws IOException {
+    int count = 0;
+    int b;
+
+    while((b = in.read()) != '\n') {
+      if(b < '0' || b > '9') {
+        throw new IOException((b < 0) ? "No arg count." : "Invalid arg count.");
+      }
+
+      count = (count * 10) + (b - '0');
+
+      if(count > MAX_ARGS) {
+        throw new IOException("Too many args.");
+      }
+    }
+
+    String[] args = new String[count];
+    ByteArrayOutputStream arg = new ByteArrayOutputStream();
+    int totalBytes = 0;
+
+    for(int i = 0; i < count; ++i) {
+      arg.reset();
+
+      while((b = in.read()) != 0) {
+        if(b < 0) {
+          throw new EOFException("Missing args.");
+        }
+        if(++totalBytes > MAX_ARGS_BYTES) {
+          throw new IOException("Args too big.");
+        }
+
+        arg.write(b);
+      }
+
+      args[i] = arg.toString(StandardCharsets.UTF_8);
+    }
+
+    return args;
+  }
+
+  /**
+   * <pre>
+   * Stops accepting clients, waits a bit for the running ones, deletes the
+   * socket file, & lastly releases the lock (see lock()).
+   * </pre>
+   */
+  @Override
+  public void close() throws IOException {
+    server.close();
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(5,TimeUnit.SECONDS);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      Files.deleteIfExists(socketFile);
+    }
+    finally {
+      // Closing the channel releases the lock.
+      lockChannel.close();
+    }
+  }
+
+  /**
+   * <pre>
+   * Writes each line as "<stream> <line>\n" to raw, & on flush, any text
+   * without a newline yet as "<stream>-<text>\n".
+   * </pre>
+   */
+  private static final class LineOutputStream extends OutputStream {
+    private final OutputStream raw;
+    private final byte stream;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private LineOutputStream(OutputStream raw,char stream) {
+      this.raw = raw;
+      this.stream = (byte)stream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if(b == '\n') {
+        writeLine(' ');
+      }
+      else {
+        line.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] bytes,int offset,int length) throws IOException {
+      final int end = offset + length;
+
+      for(int i = offset; i < end; ++i) {
+        if(bytes[i] == '\n') {
+          line.write(bytes,offset,i - offset);
+          writeLine(' ');
+          offset = i + 1;
+        }
+      }
+
+      line.write(bytes,offset,end - offset);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if(line.size() > 0) {
+        writeLine('-');
+      }
+
+      synchronized(raw) {
+        raw.flush();
+      }
+    }
+
+    private void writeLine(char separator) throws IOException {
+      synchronized(raw) {
+        raw.write(stream);
+        raw.write(separator);
+        line.writeTo(raw);
+        raw.write('\n');
+      }
+
+      line.reset();
+    }
+  }
+}
@@ -8,54 +8,60 @@ package tv.twitch.tandycakes.crim;
 import tv.twitch.tandycakes.Formatter;
 import tv.twitch.tandycakes.error.CrimException;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * <pre>
- * For a library, maybe decouple/abstract it even further by just parsing each
- * arg as classes ArgOrCmd and Opt without needing command, globalOptions, etc.,
- * but then it requires O(3n).
+ * Parses in 1 pass over the args, which are each split (see Option.split())
+ * & looked up only once.
  *
- * It's still kind of bad now as O(2n), but the Runner logic kind of forces
- * that at the moment.
+ * Option runners (such as "--help") supersede command runners, and change
+ * how args are parsed (subcommands are followed, but args aren't consumed),
+ * which can't be known until an option runner is found (if any), such as
+ * "cmd1 cmd2 --help". So 2 states are stepped through the args at the same
+ * time, and which one wins is resolved at the end:
+ * - A runner state, which parses as if there is an option runner.
+ *   If it finds one, then it just keeps going as the result.
+ * - A command state, which parses normally. Its error (if any) is deferred
+ *   until the runner state is done without finding an option runner.
+ *
+ * Both states are usually in the same command, so the lookups of each arg
+ * are shared.
+ *
+ * The parser itself is immutable, & all of the state of a parse is local to
+ * its call (a Session), so 1 parser can be reused & called from many threads
+ * at once, as long as the commands/options aren't changed while parsing.
+ *
+ * For many parses, freeze the commands first (see Command.freeze()), so each
+ * option is resolved with 1 lookup, no matter how deep the command is.
  * </pre>
  */
 public class CrimParser {
   // TODO: parse any opt/arg/cmd prefixed with "-" or "--" as an opt?
   // TODO: implement "--" to stop parsing rest of args to allow "--" in arg's text
   // TODO: implement "-aBcD" combined short opts?
-  // TODO: add fuzzy suggestions for invalid commands/opts?
   // TODO: multi-args for options "-f file1 -f file2"
   // TODO: set required/optional opts/args?
 
-  public final String[] mainArgs;
-  public int mainArgsIndex = 0;
+  private static final byte SCOPE_NONE = 0;
+  private static final byte SCOPE_LOCAL = 1;
+  private static final byte SCOPE_GLOBAL = 2;
+  private static final byte SCOPE_PARENT = 3;
 
   public final Command root;
   public final Command globalOptions;
 
-  public Command command;
-  public final CommandData commandData = new CommandData();
-
-  public Option optionToRun = null;
-  public String[] commandArgNames;
-  public int commandArgNamesIndex = 0;
-  public boolean eatAllCommandArgs;
-
-  // Like a stack, because the most recent parent's options should supersede grandparents'.
-  public final Deque<Command> parentCommands = new LinkedList<>();
-
-  public CrimParser(Command root,Command globalOptions,String... mainArgs) {
+  public CrimParser(Command root,Command globalOptions) {
     if(root == null) {
       throw new IllegalArgumentException("Null root command.");
     }
-    if(mainArgs == null) {
-      throw new IllegalArgumentException("Null main args.");
-    }
 
-    this.mainArgs = mainArgs;
     this.root = root;
     this.globalOptions = globalOptions;
   }
@@ -64,80 +70,252 @@ public class CrimParser {
    * <pre>
    * Uses an instance method, instead of a static method, so that this can be
    * converted to interface-style code one day so can set/use different parsers.
+   *
+   * Thread-safe.
    * </pre>
    */
-  public CommandRunner parse() {
-    CommandRunner runner = parse(ParseFlag.FOR_OPT_RUNNER);
+  public Result parse(String... mainArgs) {
+    if(mainArgs == null) {
+      throw new IllegalArgumentException("Null main args.");
+    }
 
-    return parse((runner == null) ? ParseFlag.NONE : ParseFlag.HAS_OPT_RUNNER);
+    return new Session(mainArgs).parse();
   }
 
-  public CommandRunner parse(ParseFlag flag) {
-    // Reset non-final fields.
-    command = root;
+  /**
+   * <pre>
+   * The result of parse().
+   *
+   * runner is null if none was set, such as when just setting the initial
+   * skeleton for testing.
+   *
+   * parentCommands is like a stack, from the most recent parent to root.
+   * </pre>
+   */
+  public record Result(
+      CommandRunner runner
+      ,Command command
+      ,CommandData commandData
+      ,Option optionToRun
+      ,List<Command> parentCommands
+  ) {
+    public void run(Crim crim) {
+      if(runner != null) {
+        runner.run(crim,command,commandData);
+      }
+    }
+  }
 
-    optionToRun = null;
-    commandArgNames = command.hasArgs() ? command.argNames : null;
-    commandArgNamesIndex = 0;
-    eatAllCommandArgs = command.isMultiArg;
+  /**
+   * <pre>
+   * The state of 1 call of parse(), which is never shared between threads.
+   * </pre>
+   */
+  private final class Session {
+    private final String[] mainArgs;
+
+    // Each main arg split into the option name & arg (null if none).
+    private final String[] optionNames;
+    private final String[] optionArgs;
+    // The lookups of each main arg, shared by both states when in the same command.
+    // The scopes are the same for the same command, since the parents are its ancestors.
+    private final Command[] optionLookupCommands;
+    private final Option[] optionLookups;
+    private final byte[] optionLookupScopes;
+    private final Command[] subLookupCommands;
+    private final Command[] subLookups;
+
+    private Session(String[] mainArgs) {
+      final int length = mainArgs.length;
+
+      this.mainArgs = mainArgs;
+      this.optionNames = new String[length];
+      this.optionArgs = new String[length];
+      this.optionLookupCommands = new Command[length];
+      this.optionLookups = new Option[length];
+      this.optionLookupScopes = new byte[length];
+      this.subLookupCommands = new Command[length];
+      this.subLookups = new Command[length];
+
+      for(int i = 0; i < length; ++i) {
+        String[] parts = Option.split(mainArgs[i]);
+
+        optionNames[i] = parts[0];
+        optionArgs[i] = (parts.length == 2) ? parts[1] : null;
+      }
+    }
 
-    for(mainArgsIndex = 0; mainArgsIndex < mainArgs.length; ++mainArgsIndex) {
-      String mainArg = mainArgs[mainArgsIndex];
-      String[] parts = Option.split(mainArg);
+    private Result parse() {
+      ParseState runnerState = new ParseState(this,true);
+      ParseState commandState = new ParseState(this,false);
+      CrimException commandError = null;
 
-      String optionName = parts[0];
-      String optionArg = (parts.length == 2) ? parts[1] : null;
+      while(runnerState.hasNext() || (commandState != null && commandState.hasNext())) {
+        if(runnerState.hasNext()) {
+          // Errors are thrown right away, since either this is before an option
+          //   runner is found, or this is the result.
+          runnerState.step();
 
-      Option option;
+          // Found an option runner, so the command state doesn't matter anymore.
+          if(runnerState.optionToRun != null) {
+            commandState = null;
+          }
+        }
 
-      // First, current command's local options.
-      if((option = command.optionTrie.find(optionName)) != null) {
-        if(option.runner != null && flag == ParseFlag.FOR_OPT_RUNNER) {
-          return option.runner;
+        if(commandState != null && commandState.hasNext()) {
+          try {
+            commandState.step();
+          }
+          catch(CrimException e) {
+            commandError = e;
+            commandState = null;
+          }
         }
+      }
 
-        parseOption(commandData.opts(),optionName,optionArg,option);
+      ParseState result;
 
-        continue;
+      if(runnerState.optionToRun != null) {
+        result = runnerState;
       }
-
-      // Second, global options.
-      if((option = globalOptions.optionTrie.find(optionName)) != null) {
-        if(option.runner != null && flag == ParseFlag.FOR_OPT_RUNNER) {
-          return option.runner;
+      else {
+        if(commandError != null) {
+          throw commandError;
         }
 
-        parseOption(commandData.globalOpts(),optionName,optionArg,option);
+        result = commandState;
+      }
+
+      CommandRunner runner = result.finish();
+
+      return new Result(runner,result.command,result.commandData,result.optionToRun
+          ,List.copyOf(result.parentCommands));
+    }
 
-        continue;
+    /**
+     * <pre>
+     * Looks up the option in the scopes of the command (& the memo of the arg).
+     *
+     * First, the command's local options. Second, global options. Third,
+     * parent/previous commands' local options.
+     *
+     * If the command is frozen (see Command.freeze()), then this is just
+     * 1 lookup in its ScopeIndex.
+     * </pre>
+     */
+    private Option findOption(ParseState state,int index) {
+      if(optionLookupCommands[index] == state.command) {
+        return optionLookups[index];
       }
 
-      // Third, parent/previous commands' local options.
-      for(Command parentCommand: parentCommands) {
-        if((option = parentCommand.optionTrie.find(optionName)) != null) {
-          if(option.runner != null && flag == ParseFlag.FOR_OPT_RUNNER) {
-            return option.runner;
-          }
+      final String optionName = optionNames[index];
+      final ScopeIndex scopeIndex = state.command.getScopeIndex(globalOptions);
+      Option option;
+      byte scope = SCOPE_NONE;
 
-          parseOption(commandData.opts(),optionName,optionArg,option);
+      if(scopeIndex != null) {
+        ScopeIndex.ScopedOption scopedOption = scopeIndex.findOption(optionName);
 
-          break;
+        if(scopedOption != null) {
+          option = scopedOption.option();
+          // Local & parent options are stored the same, so don't need to tell them apart.
+          scope = scopedOption.isGlobal() ? SCOPE_GLOBAL : SCOPE_LOCAL;
+        }
+        else {
+          option = null;
+        }
+      }
+      else if((option = state.command.optionTrie.find(optionName)) != null) {
+        scope = SCOPE_LOCAL;
+      }
+      else if((option = globalOptions.optionTrie.find(optionName)) != null) {
+        scope = SCOPE_GLOBAL;
+      }
+      else {
+        for(Command parentCommand: state.parentCommands) {
+          if((option = parentCommand.optionTrie.find(optionName)) != null) {
+            scope = SCOPE_PARENT;
+            break;
+          }
         }
       }
 
-      // Found a parent/previous command's local option from the loop?
+      optionLookupCommands[index] = state.command;
+      optionLookups[index] = option;
+      optionLookupScopes[index] = scope;
+
+      return option;
+    }
+
+    private Command findSubcommand(ParseState state,int index) {
+      if(subLookupCommands[index] == state.command) {
+        return subLookups[index];
+      }
+
+      Command sub = state.command.subcommandTrie.find(mainArgs[index]);
+
+      subLookupCommands[index] = state.command;
+      subLookups[index] = sub;
+
+      return sub;
+    }
+  }
+
+  /**
+   * <pre>
+   * The state of parsing the args with or without an option runner.
+   *
+   * If isForOptionRunner, then this parses as if there's an option runner,
+   * which doesn't consume subcommand args, because of "cmd1 cmd2 --help"
+   * with "cmd1 <mainArgs...>".
+   * </pre>
+   */
+  private final class ParseState {
+    private final Session session;
+    private final String[] mainArgs;
+    private final boolean isForOptionRunner;
+    private int mainArgsIndex = 0;
+
+    private Command command = root;
+    private final CommandData commandData = new CommandData();
+    // Like a stack, because the most recent parent's options should supersede grandparents'.
+    private final Deque<Command> parentCommands = new ArrayDeque<>();
+
+    private Option optionToRun = null;
+    private String[] commandArgNames = root.hasArgs() ? root.argNames : null;
+    private int commandArgNamesIndex = 0;
+    private boolean eatAllCommandArgs = root.isMultiArg;
+
+    private ParseState(Session session,boolean isForOptionRunner) {
+      this.session = session;
+      this.mainArgs = session.mainArgs;
+      this.isForOptionRunner = isForOptionRunner;
+    }
+
+    private boolean hasNext() {
+      return mainArgsIndex < mainArgs.length;
+    }
+
+    private void step() {
+      final int index = mainArgsIndex++;
+      final Option option = session.findOption(this,index);
+
       if(option != null) {
-        continue;
+        final Map<String,String> dataOptions = (session.optionLookupScopes[index] == SCOPE_GLOBAL)
+            ? commandData.globalOpts() : commandData.opts();
+
+        parseOption(dataOptions,session.optionNames[index],session.optionArgs[index],option);
+        return;
       }
 
       // Lastly, args/subcommands.
+      final String mainArg = mainArgs[index];
       Command sub;
 
-      if(flag == ParseFlag.FOR_OPT_RUNNER || flag == ParseFlag.HAS_OPT_RUNNER
-          || optionToRun != null) {
+      if(isForOptionRunner || optionToRun != null) {
         // Don't consume subcommand args if there's an option runner
         //   because of "cmd1 cmd2 --help" with "cmd1 <mainArgs...>".
-        if((sub = command.subcommandTrie.find(mainArg)) != null) {
+        if((sub = session.findSubcommand(this,index)) != null) {
           parentCommands.addFirst(command);
           command = sub;
         }
@@ -155,7 +333,7 @@ public class CrimParser {
             commandArgNamesIndex = 0;
           }
         }
-        else if((sub = command.subcommandTrie.find(mainArg)) != null) {
+        else if((sub = session.findSubcommand(this,index)) != null) {
           if(sub.isMultiArg) {
             eatAllCommandArgs = true;
           }
@@ -167,120 +345,184 @@ public class CrimParser {
           command = sub;
         }
         else {
+          String suggestion = buildSuggestion(command,parentCommands,session.optionNames[index],mainArg);
+
           if(command.isRoot()) {
             throw new CrimException(Formatter.format(
-                "Invalid option/command: '{}'.",mainArg));
+                "Invalid option/command: '{}'.{}",mainArg,suggestion));
           }
           else {
             throw new CrimException(Formatter.format(
-                "For command '{}', invalid option/command: '{}'."
-                ,command.buildFullName(root),mainArg));
+                "For command '{}', invalid option/command: '{}'.{}"
+                ,command.buildFullName(root),mainArg,suggestion));
           }
         }
       }
     }
 
-    if(flag == ParseFlag.FOR_OPT_RUNNER) {
-      return (optionToRun != null) ? optionToRun.runner : null;
-    }
+    private CommandRunner finish() {
+      // Check if have the required number of args for the last [sub]command,
+      //   if there was no option runner.
+      if(optionToRun == null && commandArgNames != null
+          && commandArgNamesIndex < commandArgNames.length) {
+        if(command.isRoot()) {
+          throw new CrimException(Formatter.format(
+              "Missing {} required arg{}."
+              ,commandArgNames.length
+              ,(commandArgNames.length == 1) ? "" : 's'));
+        }
+        else {
+          throw new CrimException(Formatter.format(
+              "Command '{}' requires {} arg{}."
+              ,command.buildFullName(root)
+              ,commandArgNames.length
+              ,(commandArgNames.length == 1) ? "" : 's'));
+        }
+      }
 
-    // Check if have the required number of args for the last [sub]command,
-    //   if there was no option runner.
-    if(optionToRun == null && commandArgNames != null
-        && commandArgNamesIndex < commandArgNames.length) {
-      if(command.isRoot()) {
-        throw new CrimException(Formatter.format(
-            "Missing {} required arg{}."
-            ,commandArgNames.length
-            ,(commandArgNames.length == 1) ? "" : 's'));
+      // Option runners supersede command runners.
+      // For example, "--version" should show the version, not run the command.
+      // For example, "--help subcmd1 subcmd2" should show the help of subcmd2,
+      //   not run subcmd2.
+      if(optionToRun != null) {
+        return optionToRun.runner;
       }
-      else {
-        throw new CrimException(Formatter.format(
-            "Command '{}' requires {} arg{}."
-            ,command.buildFullName(root)
-            ,commandArgNames.length
-            ,(commandArgNames.length == 1) ? "" : 's'));
+      if(command.runner != null) {
+        return command.runner;
       }
+
+      return root.runner;
     }
 
-    CommandRunner runner;
+    private void parseOption(Map<String,String> dataOptions,String optionName,String optionArg,Option option) {
+      if(option.argName == null) {
+        if(optionArg != null) {
+          if(command.isRoot()) {
+            throw new CrimException(Formatter.format(
+                "Option '{}' does not accept args: '{}'."
+                ,optionName,optionArg));
+          }
+          else {
+            throw new CrimException(Formatter.format(
+                "Command '{}' option '{}' does not accept args: '{}'."
+                ,command.buildFullName(root),optionName,optionArg));
+          }
+        }
 
-    // Option runners supersede command runners.
-    // For example, "--version" should show the version, not run the command.
-    // For example, "--help subcmd1 subcmd2" should show the help of subcmd2,
-    //   not run subcmd2.
-    if(optionToRun != null) {
-      runner = optionToRun.runner;
-    }
-    else {
-      if(command.runner != null) {
-        runner = command.runner;
+        dataOptions.put(option.name,"");
       }
       else {
-        runner = root.runner;
-      }
-    }
-
-    return runner;
-  }
+        if(optionArg == null) {
+          if(mainArgsIndex >= mainArgs.length) {
+            if(command.isRoot()) {
+              throw new CrimException(Formatter.format(
+                  "Option '{}' requires an arg."
+                  ,optionName));
+            }
+            else {
+              throw new CrimException(Formatter.format(
+                  "Command '{}' option '{}' requires an arg."
+                  ,command.buildFullName(root),optionName));
+            }
+          }
 
-  public void parseOption(Map<String,String> dataOptions,String optionName,String optionArg,Option option) {
-    if(option.argName == null) {
-      if(optionArg != null) {
-        if(command.isRoot()) {
-          throw new CrimException(Formatter.format(
-              "Option '{}' does not accept args: '{}'."
-              ,optionName,optionArg));
-        }
-        else {
-          throw new CrimException(Formatter.format(
-              "Command '{}' option '{}' does not accept args: '{}'."
-              ,command.buildFullName(root),optionName,optionArg));
+          optionArg = mainArgs[mainArgsIndex++];
         }
+
+        dataOptions.put(option.name,optionArg);
       }
 
-      dataOptions.put(option.name,"");
-    }
-    else {
-      if(optionArg == null) {
-        if((++mainArgsIndex) >= mainArgs.length) {
+      if(option.runner != null) {
+        if(optionToRun != null) {
           if(command.isRoot()) {
             throw new CrimException(Formatter.format(
-                "Option '{}' requires an arg."
-                ,optionName));
+                "Option '{}' conflicts with option '{}' runner."
+                ,optionName,optionToRun.name));
           }
           else {
             throw new CrimException(Formatter.format(
-                "Command '{}' option '{}' requires an arg."
-                ,command.buildFullName(root),optionName));
+                "Command '{}' option '{}' conflicts with option '{}' runner."
+                ,command.buildFullName(root),optionName,optionToRun.name));
           }
         }
 
-        optionArg = mainArgs[mainArgsIndex];
+        optionToRun = option;
       }
-
-      dataOptions.put(option.name,optionArg);
     }
+  }
 
-    if(option.runner != null) {
-      if(optionToRun != null) {
-        if(command.isRoot()) {
-          throw new CrimException(Formatter.format(
-              "Option '{}' conflicts with option '{}' runner."
-              ,optionName,optionToRun.name));
+  /**
+   * <pre>
+   * Builds " Did you mean '...'?" with the closest names to the invalid arg,
+   * or returns an empty string if there are none.
+   *
+   * Options (in the same scopes as parsing: command, global options, then
+   * parentCommands) are only suggested if the arg starts with "-", else
+   * subcommands of command.
+   *
+   * Examples:
+   *   (play, [root], "--fhta", "--fhta")  //=> " Did you mean '--fhat'?"
+   *   (root, [], "pley", "pley")          //=> " Did you mean 'play'?"
+   * </pre>
+   */
+  public String buildSuggestion(Command command,Iterable<Command> parentCommands,String optionName,String mainArg) {
+    Set<String> names = new LinkedHashSet<>();
+
+    if(optionName.startsWith("-")) {
+      final int maxDistance = calcMaxTypos(optionName);
+      List<Option> bestOptions = new ArrayList<>();
+      List<Option> options = new ArrayList<>();
+      int bestDistance = -1;
+
+      List<Command> scopes = new ArrayList<>();
+      scopes.add(command);
+      scopes.add(globalOptions);
+      parentCommands.forEach(scopes::add);
+
+      for(Command scope: scopes) {
+        options.clear();
+        int distance = scope.optionTrie.findFuzzy(optionName,maxDistance,options);
+
+        if(distance < 0 || (bestDistance >= 0 && distance > bestDistance)) {
+          continue;
         }
-        else {
-          throw new CrimException(Formatter.format(
-              "Command '{}' option '{}' conflicts with option '{}' runner."
-              ,command.buildFullName(root),optionName,optionToRun.name));
+        if(bestDistance < 0 || distance < bestDistance) {
+          bestDistance = distance;
+          bestOptions.clear();
         }
+
+        bestOptions.addAll(options);
       }
 
-      optionToRun = option;
+      for(Option option: bestOptions) {
+        names.add(option.name);
+      }
+    }
+    else {
+      for(Command sub: command.subcommandTrie.findFuzzy(mainArg,calcMaxTypos(mainArg))) {
+        names.add(sub.name);
+      }
     }
+
+    if(names.isEmpty()) {
+      return "";
+    }
+
+    return Formatter.format(" Did you mean '{}'?",String.join("' or '",names));
   }
 
-  public enum ParseFlag {
-    NONE,FOR_OPT_RUNNER,HAS_OPT_RUNNER
+  /**
+   * <pre>
+   * Returns the max edit distance for suggesting a name for the arg:
+   * 1 for up to 4 code points, else 2, since short args would match too much
+   * with 2 typos.
+   *
+   * Examples:
+   *   ("pley")    //=> 1
+   *   ("--fhta")  //=> 2
+   * </pre>
+   */
+  public int calcMaxTypos(String arg) {
+    return (arg.codePointCount(0,arg.length()) <= 4) ? 1 : 2;
   }
 }
@@ -0,0 +1,337 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import tv.twitch.tandycakes.LinkedTrie;
+import tv.twitch.tandycakes.error.CrimException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <pre>
+ * A REPL that keeps 1 warm Crim & reads command lines from its stdin,
+ * so each command doesn't pay for JVM startup, class loading, & building
+ * the commands again.
+ *
+ * Each line is split like Command.split() & parsed/run by Crim.parse(),
+ * with the commands frozen first (see Crim.freeze()).
+ *
+ * Builtins:
+ *   exit, quit  # Exit the shell (or EOF).
+ *   history     # Show the history.
+ *   !!          # Run the last line again, such as "!! --help".
+ *   !n          # Run line #n of the history again.
+ *
+ * Completion:
+ *   Plain stdin is line buffered (no raw mode), so press Tab & then Enter
+ *   to list the subcommands (or options, if the word starts with "-") that
+ *   complete the word before the Tab, such as "pl[Tab]" or "play --[Tab]".
+ * </pre>
+ */
+public class CrimShell {
+  public static final int MAX_HISTORY = 1000;
+  public static final int MAX_COMPLETIONS = 50;
+
+  // So that "shell" can't be run inside of the shell.
+  private static final ThreadLocal<CrimShell> CURRENT = new ThreadLocal<>();
+
+  public final Crim crim;
+
+  private final Deque<String> history = new ArrayDeque<>();
+  private int historyOffset = 0; // The number of the oldest line in the history minus 1.
+  private boolean isShowTime = false;
+
+  public CrimShell(Crim crim) {
+    if(crim == null) {
+      throw new IllegalArgumentException("Null crim.");
+    }
+
+    this.crim = crim;
+  }
+
+  public void run() {
+    if(CURRENT.get() != null) {
+      throw new CrimException("Already in the shell.");
+    }
+
+    CURRENT.set(this);
+
+    try {
+      crim.freeze();
+
+      while(true) {
+        showPrompt();
+
+        if(!crim.stdin().hasNextLine()) {
+          crim.fansi.println();
+          break;
+        }
+
+        if(!runLine(crim.stdin().nextLine())) {
+          break;
+        }
+      }
+    }
+    finally {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * Returns false to exit.
+   */
+  public boolean runLine(String line) {
+    final int tabIndex = line.indexOf('\t');
+
+    if(tabIndex >= 0) {
+      showCompletions(line.substring(0,tabIndex));
+      return true;
+    }
+
+    line = line.strip();
+
+    if(line.isEmpty()) {
+      return true;
+    }
+
+    if(line.startsWith("!")) {
+      line = expandHistory(line);
+
+      if(line == null) {
+        return true;
+      }
+
+      // Show what is actually run, like Bash.
+      crim.fansi.println(line);
+    }
+
+    addHistory(line);
+
+    switch(line) {
+      case "exit":
+      case "quit":
+        return false;
+
+      case "history":
+        showHistory();
+        return true;
+    }
+
+    final long startTime = System.nanoTime();
+
+    try {
+      crim.parse(Command.split(line));
+    }
+    catch(CrimException e) {
+      crim.fansi.srintln("{err ERROR }: {}",e.getLocalizedMessage());
+    }
+    catch(RuntimeException e) {
+      // Like main(), but keep the shell going, since it's just 1 command.
+      e.printStackTrace();
+    }
+
+    if(isShowTime) {
+      final long elapsed = System.nanoTime() - startTime;
+
+      crim.fansi.srintln("{arg ({} ms) }",String.format("%.3f",elapsed / 1_000_000.0));
+    }
+
+    return true;
+  }
+
+  public void showPrompt() {
+    // As a frame, so that the prompt (without a newline) is flushed.
+    crim.fansi.beginFrame();
+
+    try {
+      crim.fansi.srint("{cmd {} }> ",crim.appName);
+    }
+    finally {
+      crim.fansi.endFrame();
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns null (after showing an error) if the line # isn't in the history.
+   *
+   * Examples:
+   *   ("!!")         //=> the last line
+   *   ("!! --help")  //=> the last line + " --help"
+   *   ("!3")         //=> line #3
+   * </pre>
+   */
+  public String expandHistory(String line) {
+    String event;
+    String rest;
+
+    if(line.startsWith("!!")) {
+      event = history.peekLast();
+      rest = line.substring(2);
+    }
+    else {
+      int end = 1;
+
+      while(end < line.length() && Character.isDigit(line.charAt(end))) {
+        ++end;
+      }
+
+      if(end == 1) {
+        // Not a history event, such as "!abc".
+        return line;
+      }
+
+      try {
+        event = findHistory(Integer.parseInt(line.substring(1,end)));
+      }
+      catch(NumberFormatException e) {
+        event = null; // Too big, such as "!99999999999".
+      }
+
+      rest = line.substring(end);
+    }
+
+    if(event == null) {
+      crim.fansi.srintln("{err ERROR }: {}: event not found.",line);
+      return null;
+    }
+
+    return event + rest;
+  }
+
+  public void addHistory(String line) {
+    if(history.size() >= MAX_HISTORY) {
+      history.removeFirst();
+      ++historyOffset;
+    }
+
+    history.addLast(line);
+  }
+
+  /**
+   * Returns null if not found.
+   */
+  public String findHistory(int number) {
+    int index = number - historyOffset - 1;
+
+    if(index < 0 || index >= history.size()) {
+      return null;
+    }
+
+    for(String line: history) {
+      if(index-- == 0) {
+        return line;
+      }
+    }
+
+    return null;
+  }
+
+  public void showHistory() {
+    crim.fansi.beginFrame();
+
+    try {
+      int number = historyOffset;
+
+      for(String line: history) {
+        crim.fansi.srintln("{arg {} }  {}",String.format("%4d",++number),line);
+      }
+    }
+    finally {
+      crim.fansi.endFrame();
+    }
+  }
+
+  public void showCompletions(String text) {
+    Set<String> names = complete(text);
+
+    if(names.isEmpty()) {
+      crim.fansi.println("No completions.");
+    }
+    else {
+      crim.fansi.srintln("  {cmd {} }",String.join("  ",names));
+    }
+  }
+
+  /**
+   * <pre>
+   * Returns the subcommands (or options, if the last word starts with "-")
+   * that complete the last word of the text, in the command of the words
+   * before it.
+   *
+   * Options are in the same scopes as parsing: the command's local options,
+   * global options, then the parents' local options.
+   *
+   * Examples (with "play --fhat"):
+   *   ("pl")        //=> [play]
+   *   ("play --f")  //=> [--fhat]
+   *   ("")          //=> [all of root's subcommands]
+   * </pre>
+   */
+  public Set<String> complete(String text) {
+    text = text.stripLeading();
+
+    final boolean isNewWord = text.isEmpty() || Character.isWhitespace(text.charAt(text.length() - 1));
+    final String[] words = text.isEmpty() ? new String[0] : Command.split(text);
+    final int wordsBeforeCount = isNewWord ? words.length : (words.length - 1);
+    final String partial = isNewWord ? "" : words[words.length - 1];
+
+    Command command = crim.root;
+    Deque<Command> parentCommands = new ArrayDeque<>();
+
+    for(int i = 0; i < wordsBeforeCount; ++i) {
+      Command sub = command.subcommandTrie.find(words[i]);
+
+      if(sub != null) {
+        parentCommands.addFirst(command);
+        command = sub;
+      }
+    }
+
+    Set<String> names = new LinkedHashSet<>();
+
+    if(partial.startsWith("-")) {
+      addCompletions(names,command.optionTrie,partial);
+      addCompletions(names,crim.globalOptions.optionTrie,partial);
+
+      for(Command parentCommand: parentCommands) {
+        addCompletions(names,parentCommand.optionTrie,partial);
+      }
+    }
+    else {
+      addCompletions(names,command.subcommandTrie,partial);
+    }
+
+    return names;
+  }
+
+  private void addCompletions(Set<String> names,LinkedTrie<?> trie,String partial) {
+    for(Map.Entry<String,?> entry: trie.complete(partial,MAX_COMPLETIONS)) {
+      if(names.size() >= MAX_COMPLETIONS) {
+        break;
+      }
+
+      names.add(entry.getKey());
+    }
+  }
+
+  public CrimShell setShowTime(boolean isShowTime) {
+    this.isShowTime = isShowTime;
+    return this;
+  }
+
+  public boolean isShowTime() {
+    return isShowTime;
+  }
+
+  public int getHistoryCount() {
+    return historyOffset + history.size();
+  }
+}
@@ -25,8 +25,51 @@ public class Option {
 
   private Command parent = Command.EMPTY;
 
+  /**
+   * <pre>
+   * Splits the option name & arg, such as "--opt=arg" or "--opt arg".
+   *
+   * This is the same as ARG_PATTERN.split(optAndArg,2), but without regex,
+   * since this is done for every main arg:
+   * at the first whitespace run, or '=' & the whitespace after it.
+   *
+   * Examples:
+   *   ("--opt")          //=> ["--opt"]
+   *   ("--opt=arg")      //=> ["--opt", "arg"]
+   *   ("--opt = arg")    //=> ["--opt", "= arg"] (the space comes first)
+   *   ("--opt\t\targ")  //=> ["--opt", "arg"]
+   * </pre>
+   */
   public static String[] split(String optAndArg) {
-    return ARG_PATTERN.split(optAndArg,2);
+    final int length = optAndArg.length();
+
+    for(int i = 0; i < length; ++i) {
+      final char c = optAndArg.charAt(i);
+
+      // A space before '=' is matched by "\s+" first, so only eat the spaces after.
+      if(!isSpace(c) && c != '=') {
+        continue;
+      }
+
+      int end = i + 1;
+
+      while(end < length && isSpace(optAndArg.charAt(end))) {
+        ++end;
+      }
+
+      return new String[] {optAndArg.substring(0,i),optAndArg.substring(end)};
+    }
+
+    return new String[] {optAndArg};
+  }
+
+  /**
+   * <pre>
+   * The same as regex's "\s": [ \t\n\x0B\f\r].
+   * </pre>
+   */
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
   }
 
   public Option(String name) {
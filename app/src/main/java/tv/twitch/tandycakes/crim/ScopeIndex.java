@@ -0,0 +1,121 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import tv.twitch.tandycakes.LinkedTrie;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <pre>
+ * The frozen option scopes of a command (see Command.freeze()), so that an
+ * option is resolved with 1 trie lookup, instead of 1 per scope (the
+ * command's local options, global options, then each parent's local options).
+ *
+ * Every prefix of every name/alias in the scopes is resolved when built,
+ * scope by scope, just like the lookups while parsing, and stored as its own
+ * key. So a prefix that's unique in the command's local options but not
+ * in global options (for example) still resolves to the local option, &
+ * the time to resolve is the same no matter how deep the command is.
+ * </pre>
+ */
+final class ScopeIndex {
+  /**
+   * A prefix that doesn't resolve in any scope (ambiguous), which must be
+   * stored so that the trie doesn't complete it to something else.
+   */
+  private static final ScopedOption NO_OPTION = new ScopedOption(null,false);
+
+  private final Stamp stamp;
+  private final LinkedTrie<ScopedOption> optionTrie = new LinkedTrie<>(false);
+
+  public record ScopedOption(Option option,boolean isGlobal) {
+  }
+
+  /**
+   * <pre>
+   * The edit counts of the trees when frozen (shared by all of the indexes
+   * of 1 freeze), since an index depends on its own tree & on the tree of
+   * the global options.
+   * </pre>
+   */
+  record Stamp(Command root,long editCount,Command globalOptions,Command globalRoot,long globalEditCount) {
+    boolean isFresh(Command globalOptions) {
+      return this.globalOptions == globalOptions
+          && root.getEditCount() == editCount
+          && (globalRoot == null || globalRoot.getEditCount() == globalEditCount);
+    }
+  }
+
+  /**
+   * <pre>
+   * parentCommands is like a stack, from the most recent parent to root.
+   * </pre>
+   */
+  ScopeIndex(Command command,Iterable<Command> parentCommands,Stamp stamp) {
+    final Command globalOptions = stamp.globalOptions();
+
+    this.stamp = stamp;
+
+    List<Command> scopes = new ArrayList<>();
+    scopes.add(command);
+
+    if(globalOptions != null) {
+      scopes.add(globalOptions);
+    }
+
+    parentCommands.forEach(scopes::add);
+
+    Set<String> prefixes = new LinkedHashSet<>();
+
+    for(Command scope: scopes) {
+      scope.optionTrie.stream("").map(Map.Entry::getKey).forEach((key) -> {
+        for(int i = 0; i < key.length(); i = key.offsetByCodePoints(i,1)) {
+          prefixes.add(key.substring(0,key.offsetByCodePoints(i,1)));
+        }
+      });
+    }
+
+    for(String prefix: prefixes) {
+      ScopedOption scopedOption = NO_OPTION;
+
+      for(Command scope: scopes) {
+        Option option = scope.optionTrie.find(prefix);
+
+        if(option != null) {
+          scopedOption = new ScopedOption(option,scope == globalOptions);
+          break;
+        }
+      }
+
+      optionTrie.add(prefix,scopedOption);
+    }
+  }
+
+  /**
+   * Returns null if not found.
+   */
+  public ScopedOption findOption(String optionName) {
+    ScopedOption scopedOption = optionTrie.find(optionName);
+
+    return (scopedOption != NO_OPTION) ? scopedOption : null;
+  }
+
+  /**
+   * <pre>
+   * Returns false if any command in this tree (or in the global options'
+   * tree) has been changed since this was built, or if this was built for
+   * different global options.
+   * </pre>
+   */
+  public boolean isFresh(Command globalOptions) {
+    return stamp.isFresh(globalOptions);
+  }
+}
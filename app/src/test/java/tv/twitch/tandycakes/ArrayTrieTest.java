@@ -0,0 +1,104 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ArrayTrieTest {
+  @Test
+  void compileLikeTheLinkedTrie() {
+    Random rand = new Random(2);
+
+    for(int round = 0; round < 200; ++round) {
+      final boolean allowLonger = rand.nextBoolean();
+      LinkedTrie<String> linked = new LinkedTrie<>(allowLonger);
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+
+        linked.add(key,key);
+        model.add(key,key);
+      }
+
+      ArrayTrie<String> array = linked.compile();
+
+      assertEquals(allowLonger,array.isAllowLonger());
+      assertEquals(countNodes(model),array.getNodeCount());
+
+      for(String partial: model.buildPartials(rand)) {
+        // Checks the completions, which are indexed by the breadth-first numbering.
+        assertEquals(model.find(partial,allowLonger),array.find(partial),partial);
+        assertEquals(linked.find(partial,true),array.find(partial,true),partial);
+        assertEquals(linked.find(partial,false),array.find(partial,false),partial);
+      }
+    }
+  }
+
+  @Test
+  void findTokensLikeTheLinkedTrie() {
+    LinkedTrie<String> linked = new LinkedTrie<>();
+    linked.add("up","up");
+    linked.addAlias("up","north");
+    linked.add("down","down");
+    linked.add("left","left");
+    ArrayTrie<String> array = linked.compile();
+
+    for(String text: List.of("  up lft   down ","no n up2 d l","","   ","left")) {
+      String[] values = new String[4];
+      int[] indexes = new int[4];
+      final int count = linked.findTokens(text,values,"?");
+
+      assertEquals(count,array.findTokens(text,indexes),text);
+
+      for(int i = 0; i < count; ++i) {
+        assertEquals(values[i],(indexes[i] != ArrayTrie.NO_VALUE) ? array.getValue(indexes[i]) : "?",text);
+      }
+    }
+  }
+
+  @Test
+  void aliasesShareOneValue() {
+    LinkedTrie<String> linked = new LinkedTrie<>();
+    linked.add("solarus","solarus");
+    linked.addAlias("solarus","sol","zelda");
+    ArrayTrie<String> array = linked.compile();
+
+    assertEquals(1,array.getValueCount());
+    assertSame(array.find("zelda"),array.find("sol"));
+  }
+
+  @Test
+  void laterChangesAreNotReflected() {
+    LinkedTrie<String> linked = new LinkedTrie<>();
+    linked.add("help","help");
+    ArrayTrie<String> array = linked.compile();
+    linked.add("hello","hello");
+
+    assertEquals("help",array.find("hel"));
+    assertEquals(null,linked.find("hel"));
+  }
+
+  private static int countNodes(TrieModel model) {
+    Set<String> prefixes = new HashSet<>();
+
+    for(String key: model.getKeys().keySet()) {
+      for(int i = 1; i <= key.length(); ++i) {
+        prefixes.add(key.substring(0,i));
+      }
+    }
+
+    return prefixes.size() + 1; // + the root.
+  }
+}
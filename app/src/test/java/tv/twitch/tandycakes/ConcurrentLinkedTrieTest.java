@@ -0,0 +1,162 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConcurrentLinkedTrieTest {
+  @Test
+  void addAndRemoveLikeTheModel() {
+    Random rand = new Random(3);
+
+    for(int round = 0; round < 100; ++round) {
+      ConcurrentLinkedTrie<String> trie = new ConcurrentLinkedTrie<>();
+      TrieModel model = new TrieModel();
+
+      for(int op = 0; op < 60; ++op) {
+        String key = TrieModel.randomKey(rand,5);
+
+        if(rand.nextInt(3) == 0) {
+          assertEquals(model.getKeys().get(key),trie.remove(key),key);
+          model.remove(key);
+        }
+        else {
+          trie.add(key,key);
+          model.add(key,key);
+        }
+      }
+
+      // Checks the pruning, since a removed key's nodes must not block a completion.
+      for(String partial: model.buildPartials(rand)) {
+        assertEquals(model.find(partial,true),trie.find(partial,true),partial);
+        assertEquals(model.find(partial,false),trie.find(partial,false),partial);
+      }
+    }
+  }
+
+  @Test
+  void removeCompletesAgain() {
+    ConcurrentLinkedTrie<String> trie = new ConcurrentLinkedTrie<>();
+    trie.add("version","version");
+    trie.add("verbose","verbose");
+
+    assertNull(trie.find("ver"));
+    assertEquals("verbose",trie.remove("verbose"));
+    assertNull(trie.remove("verbose"));
+    assertNull(trie.remove("ver"));
+    assertEquals("version",trie.find("ver"));
+  }
+
+  @Test
+  void concurrentChurn() throws Exception {
+    final ConcurrentLinkedTrie<String> trie = new ConcurrentLinkedTrie<>(false);
+    final int threadCount = 4;
+    final AtomicBoolean isDone = new AtomicBoolean(false);
+    final List<TrieModel> models = new ArrayList<>();
+
+    // Never removed, so must always be found, no matter what's going on around them.
+    final String[] stableKeys = {"ab","abcd","ba","ca"};
+
+    for(String key: stableKeys) {
+      trie.add(key,key);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount + 1);
+
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+
+      for(int t = 0; t < threadCount; ++t) {
+        final TrieModel model = new TrieModel();
+        final Random rand = new Random(100 + t);
+        final String suffix = "x" + t + ".";
+        models.add(model);
+
+        writers.add(executor.submit(() -> {
+          for(int op = 0; op < 20_000; ++op) {
+            // Shares the prefixes of the other threads & of the stable keys.
+            String key = TrieModel.randomKey(rand,3) + suffix;
+
+            if(rand.nextBoolean()) {
+              trie.remove(key);
+              model.remove(key);
+            }
+            else {
+              trie.add(key,key);
+              model.add(key,key);
+            }
+          }
+        }));
+      }
+
+      Future<?> reader = executor.submit(() -> {
+        while(!isDone.get()) {
+          for(String key: stableKeys) {
+            assertEquals(key,trie.find(key),key);
+          }
+        }
+      });
+
+      for(Future<?> writer: writers) {
+        writer.get();
+      }
+
+      isDone.set(true);
+      reader.get();
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    // Every key that a thread could've added must be there only if it wasn't
+    //   removed last (no key is a prefix of another key, due to the suffix).
+    for(int t = 0; t < threadCount; ++t) {
+      final String suffix = "x" + t + ".";
+
+      for(String key: buildAllKeys(3)) {
+        key += suffix;
+
+        assertEquals(models.get(t).getKeys().get(key),trie.find(key),key);
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * Every key that TrieModel.randomKey() can return, up to maxLength.
+   * </pre>
+   */
+  private static List<String> buildAllKeys(int maxLength) {
+    List<String> keys = new ArrayList<>();
+
+    for(char c = 'a'; c <= 'd'; ++c) {
+      keys.add(String.valueOf(c));
+    }
+
+    for(int i = 0; i < keys.size(); ++i) {
+      String key = keys.get(i);
+
+      if(key.length() < maxLength) {
+        for(char c = 'a'; c <= 'd'; ++c) {
+          keys.add(key + c);
+        }
+      }
+    }
+
+    return keys;
+  }
+}
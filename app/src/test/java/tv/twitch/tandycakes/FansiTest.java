@@ -0,0 +1,221 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FansiTest {
+  private static final String[] FORMATS = {
+    "{bold/white Tandy, have you had your cake today? }",
+    "This {bold {red works} } because of spaces.",
+    "This {green is {red really } great }, right?",
+    "{bold/red some {bgblue/white nested {yellow deep } back } out } done",
+    "{bold/yellow",
+    "plain } after",
+  };
+
+  @Test
+  void minimalSgrIsOffByDefault() {
+    Fansi fansi = new Fansi();
+
+    assertFalse(fansi.isMinimalSgr());
+    assertEquals("\u001b[1m\u001b[31mx\u001b[0m\u001b[1m y\u001b[0m",fansi.style("{bold {red x} y}"));
+  }
+
+  @Test
+  void minimalSgrLooksTheSame() {
+    Fansi full = new Fansi();
+    Fansi minimal = new Fansi();
+    minimal.setMinimalSgr(true);
+
+    for(String format: FORMATS) {
+      assertEquals(render(full.style(format)),render(minimal.style(format)),format);
+    }
+  }
+
+  @Test
+  void nestedStylesWrappingRawEscapes() {
+    Fansi full = new Fansi();
+    Fansi minimal = new Fansi();
+    minimal.setMinimalSgr(true);
+
+    // The first block leaves a known (reset) state, so that only the codes
+    //   that change would be emitted for the 2nd block.
+    final String format = "{bold a} {bold {} {red x} y}";
+    final String[] args = {
+      full.style("{green g}"), // Ends with a reset.
+      "\u001b[0m",
+      "a\u001b[22mb",
+      "\u001b[4mu\u001b[0m",
+    };
+
+    for(String arg: args) {
+      List<String> cells = render(minimal.style(format,arg));
+
+      // The outer bold must be restored after the inner "{red x}" closes.
+      assertEquals("y:bold",cells.get(cells.size() - 1),arg);
+      assertEquals(render(full.style(format,arg)),cells,arg);
+    }
+
+    // Without escapes in the args, the minimal output is still smaller.
+    assertTrue(minimal.style(format,"g").length() < full.style(format,"g").length());
+    assertEquals(render(full.style(format,"g")),render(minimal.style(format,"g")));
+  }
+
+  @Test
+  void styleCacheStaysCorrectWhenFull() throws InterruptedException {
+    Fansi fansi = new Fansi();
+    final int formatCount = Fansi.MAX_STYLE_TEMPLATES * 2;
+    final String[] expected = new String[formatCount];
+
+    for(int i = 0; i < formatCount; ++i) {
+      expected[i] = fansi.style("{bold " + i + " {red {}}} " + i,i);
+    }
+
+    // Both the cached & the uncached formats, from many threads at once.
+    final List<String> errors = new ArrayList<>();
+    Thread[] threads = new Thread[4];
+
+    for(int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread(() -> {
+        for(int i = formatCount - 1; i >= 0; --i) {
+          String actual = fansi.style("{bold " + i + " {red {}}} " + i,i);
+
+          if(!expected[i].equals(actual)) {
+            synchronized(errors) {
+              errors.add(i + ": " + actual);
+            }
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for(Thread thread: threads) {
+      thread.join();
+    }
+
+    assertEquals(List.of(),errors);
+
+    // Changing the styles must not use the old (cached) templates.
+    Fansi changed = new Fansi();
+    Fansi minimal = new Fansi();
+    minimal.setMinimalSgr(true);
+    final String format = "{bold {red x} y}";
+    final String fullText = changed.style(format);
+
+    changed.setMinimalSgr(true);
+    assertEquals(minimal.style(format),changed.style(format));
+    assertNotEquals(fullText,changed.style(format));
+  }
+
+  @Test
+  void framesUseTheCharsetOfTheStream() {
+    Fansi fansi = new Fansi();
+    ByteArrayOutputStream unframed = new ByteArrayOutputStream();
+    ByteArrayOutputStream framed = new ByteArrayOutputStream();
+    final String text = "caf\u00e9 \u00bd";
+
+    fansi.setOut(new PrintStream(unframed,true,StandardCharsets.ISO_8859_1));
+    fansi.println(text);
+
+    fansi.setOut(new PrintStream(framed,true,StandardCharsets.ISO_8859_1));
+    fansi.beginFrame();
+    fansi.println(text);
+    fansi.endFrame();
+
+    assertArrayEquals(unframed.toByteArray(),framed.toByteArray());
+  }
+
+  /**
+   * <pre>
+   * Returns each visible char with the effective attributes of a terminal,
+   * such as "x:bold/31", so that different codes that look the same are equal.
+   * </pre>
+   */
+  private static List<String> render(String text) {
+    List<String> cells = new ArrayList<>();
+    boolean bold = false;
+    int fg = 0;
+    int bg = 0;
+    boolean other = false;
+
+    for(int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+
+      if(c == '\u001b' && (i + 1) < text.length() && text.charAt(i + 1) == '[') {
+        int end = text.indexOf('m',i);
+        String[] codes = text.substring(i + 2,end).split(";",-1);
+
+        for(String codeStr: codes) {
+          int code = codeStr.isEmpty() ? 0 : Integer.parseInt(codeStr);
+
+          if(code == 0) {
+            bold = false;
+            fg = 0;
+            bg = 0;
+            other = false;
+          }
+          else if(code == 1) {
+            bold = true;
+          }
+          else if(code == 22) {
+            bold = false;
+          }
+          else if(code == 39) {
+            fg = 0;
+          }
+          else if(code == 49) {
+            bg = 0;
+          }
+          else if((code >= 30 && code <= 37) || (code >= 90 && code <= 97)) {
+            fg = code;
+          }
+          else if((code >= 40 && code <= 47) || (code >= 100 && code <= 107)) {
+            bg = code;
+          }
+          else {
+            other = true;
+          }
+        }
+
+        i = end;
+        continue;
+      }
+
+      StringBuilder cell = new StringBuilder().append(c).append(':');
+      List<String> attrs = new ArrayList<>();
+
+      if(bold) {
+        attrs.add("bold");
+      }
+      if(fg != 0) {
+        attrs.add(String.valueOf(fg));
+      }
+      if(bg != 0) {
+        attrs.add(String.valueOf(bg));
+      }
+      if(other) {
+        attrs.add("other");
+      }
+
+      cells.add(cell.append(String.join("/",attrs)).toString());
+    }
+
+    return cells;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FansiWriterTest {
+  @Test
+  void blockKeepsEverything() throws Exception {
+    GateOut gate = new GateOut();
+    Fansi fansi = newFansi(gate,2,Fansi.OverflowPolicy.BLOCK);
+
+    fansi.println("0");
+    gate.awaitEntered();
+
+    // Waits for room, so on another thread.
+    Thread producer = new Thread(() -> {
+      for(int i = 1; i <= 10; ++i) {
+        fansi.println(String.valueOf(i));
+      }
+    });
+    producer.start();
+    awaitWaiting(producer);
+
+    gate.open();
+    producer.join(5000);
+    fansi.stopWriter();
+
+    assertEquals(range(0,10),gate.lines());
+    assertEquals(0,fansi.getDroppedCount());
+  }
+
+  @Test
+  void dropOldest() throws Exception {
+    GateOut gate = new GateOut();
+    Fansi fansi = newFansi(gate,2,Fansi.OverflowPolicy.DROP_OLDEST);
+
+    fansi.println("0");
+    gate.awaitEntered(); // The writer is stuck on "0".
+
+    for(int i = 1; i <= 10; ++i) {
+      fansi.println(String.valueOf(i));
+    }
+
+    assertEquals(8,fansi.getDroppedCount());
+
+    gate.open();
+    fansi.stopWriter();
+
+    assertEquals(List.of("0","9","10"),gate.lines());
+  }
+
+  @Test
+  void coalesceKeepsTheOrder() throws Exception {
+    GateOut gate = new GateOut();
+    Fansi fansi = newFansi(gate,2,Fansi.OverflowPolicy.COALESCE);
+
+    fansi.println("0");
+    gate.awaitEntered();
+
+    // Doesn't wait: 2 are queued & the rest go to the overflow.
+    for(int i = 1; i <= 10; ++i) {
+      fansi.println(String.valueOf(i));
+    }
+
+    assertEquals(0,fansi.getDroppedCount());
+
+    gate.open();
+    fansi.stopWriter();
+
+    assertEquals(range(0,10),gate.lines());
+  }
+
+  @Test
+  void coalesceWaitsWhenTheOverflowIsFull() throws Exception {
+    GateOut gate = new GateOut();
+    Fansi fansi = newFansi(gate,1,Fansi.OverflowPolicy.COALESCE);
+    final char[] big = new char[FansiWriter.MAX_OVERFLOW_LENGTH];
+    Arrays.fill(big,'x');
+    final String bigLine = new String(big);
+
+    fansi.println("0");
+    gate.awaitEntered();
+    fansi.println("1"); // Queued.
+    fansi.println(bigLine); // Overflow, which is then full.
+
+    Thread producer = new Thread(() -> fansi.println("2"));
+    producer.start();
+    awaitWaiting(producer);
+
+    assertTrue(producer.isAlive());
+
+    gate.open();
+    producer.join(5000);
+    fansi.stopWriter();
+
+    assertFalse(producer.isAlive());
+    assertEquals(List.of("0","1",bigLine,"2"),gate.lines());
+  }
+
+  @Test
+  void stopLosesNothing() throws Exception {
+    // Not DROP_OLDEST, since its dropped count is gone once stopped.
+    for(Fansi.OverflowPolicy policy: List.of(Fansi.OverflowPolicy.BLOCK,Fansi.OverflowPolicy.COALESCE)) {
+      GateOut gate = new GateOut();
+      gate.open();
+      Fansi fansi = newFansi(gate,4,policy);
+      List<Thread> producers = new ArrayList<>();
+      final int lineCount = 2000;
+
+      for(int t = 0; t < 4; ++t) {
+        final String prefix = t + ":";
+        Thread producer = new Thread(() -> {
+          for(int i = 0; i < lineCount; ++i) {
+            fansi.println(prefix + i);
+          }
+        });
+        producers.add(producer);
+        producer.start();
+      }
+
+      // In the middle of writing, so some go through the writer & some directly.
+      Thread.sleep(5);
+      fansi.stopWriter();
+
+      for(Thread producer: producers) {
+        producer.join(5000);
+      }
+
+      assertEquals(4 * lineCount,gate.lines().size(),policy.name());
+    }
+  }
+
+  private static Fansi newFansi(GateOut gate,int capacity,Fansi.OverflowPolicy policy) {
+    Fansi fansi = new Fansi();
+    fansi.setOut(new PrintStream(gate,false,StandardCharsets.UTF_8));
+    fansi.startWriter(capacity,policy);
+
+    return fansi;
+  }
+
+  private static List<String> range(int first,int last) {
+    List<String> lines = new ArrayList<>();
+
+    for(int i = first; i <= last; ++i) {
+      lines.add(String.valueOf(i));
+    }
+
+    return lines;
+  }
+
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+    while(thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+      assertTrue(System.nanoTime() < endTime,"Timed out waiting for the producer to wait.");
+      Thread.sleep(1);
+    }
+  }
+
+  /**
+   * <pre>
+   * An out that blocks every write until opened, like a stalled terminal.
+   * </pre>
+   */
+  private static final class GateOut extends OutputStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch opened = new CountDownLatch(1);
+
+    @Override
+    public void write(int b) {
+      write(new byte[] {(byte)b},0,1);
+    }
+
+    @Override
+    public void write(byte[] b,int offset,int length) {
+      entered.countDown();
+
+      try {
+        opened.await();
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      synchronized(bytes) {
+        bytes.write(b,offset,length);
+      }
+    }
+
+    void awaitEntered() throws InterruptedException {
+      assertTrue(entered.await(5,TimeUnit.SECONDS),"Timed out waiting for the writer.");
+    }
+
+    void open() {
+      opened.countDown();
+    }
+
+    List<String> lines() {
+      synchronized(bytes) {
+        String text = bytes.toString(StandardCharsets.UTF_8);
+
+        return text.isEmpty() ? List.of() : List.of(text.split(System.lineSeparator()));
+      }
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FormatterTest {
+  private static final String[] PIECES = {"{","}","{}","{{","a","bc"," ","🍰"};
+
+  @Test
+  void renderLikeTheOldFormat() {
+    Random rand = new Random(1);
+
+    for(int round = 0; round < 20_000; ++round) {
+      final String format = randomFormat(rand);
+      final Object[] args = randomArgs(rand);
+      final String expected = oldFormat(format,args);
+      final String message = format + " " + Arrays.toString(args);
+
+      assertEquals(expected,Formatter.format(format,args),message);
+      assertEquals(expected,Formatter.compile(format).render(args),message);
+      assertEquals(expected,Formatter.getTemplate(format).render(args),message);
+
+      if(args != null && args.length > 0) {
+        assertEquals(expected,Formatter.compile(format).renderAll(args),message);
+      }
+      else {
+        // The literals are still used, with "{}" for each slot.
+        assertEquals(render(format,new Object[0]),Formatter.compile(format).renderAll(args),message);
+      }
+    }
+  }
+
+  @Test
+  void renderTheExamples() {
+    assertEquals("",Formatter.format(null));
+    assertEquals("",Formatter.format(null,"some"));
+    assertEquals("This is some text.",Formatter.format("This is {} text.","some"));
+    assertEquals("This is {} text.",Formatter.format("This is {} text."));
+    assertEquals("This is {} text.",Formatter.format("This is {} text.",(Object[])null));
+    assertEquals("This is null text.",Formatter.format("This is {} text.",(String)null));
+    assertEquals("This is null text.",Formatter.format("This is {} text.",null,null));
+    assertEquals("This is {} text.",Formatter.format("This is {{} text.","escaped"));
+
+    // Extra args are ignored, & missing args keep their "{}".
+    assertEquals("1 2",Formatter.format("{} {}",1,2,3));
+    assertEquals("1 {} {}",Formatter.format("{} {} {}",1));
+
+    Formatter.Template template = Formatter.compile("{{{}}} {");
+    assertEquals(1,template.getSlotCount());
+    assertEquals("{{{}}} {",template.render());
+    assertEquals("{x}} {",template.render("x"));
+    assertEquals("{{}}} {",template.renderAll(null));
+  }
+
+  @Test
+  void cacheStopsAddingWhenFull() {
+    Formatter.clearTemplateCache();
+
+    final String[] formats = new String[Formatter.MAX_CACHED_TEMPLATES];
+
+    for(int i = 0; i < formats.length; ++i) {
+      formats[i] = "cacheStopsAddingWhenFull {} " + i;
+      Formatter.getTemplate(formats[i]);
+    }
+
+    // These were all added, since the cache wasn't full yet.
+    for(String format: formats) {
+      assertSame(Formatter.getTemplate(format),Formatter.getTemplate(format),format);
+    }
+
+    // Now it's full, so new ones are compiled each time, but still correct.
+    final String newFormat = "cacheStopsAddingWhenFull {} new";
+
+    assertNotSame(Formatter.getTemplate(newFormat),Formatter.getTemplate(newFormat));
+    assertEquals("cacheStopsAddingWhenFull x new",Formatter.format(newFormat,"x"));
+
+    for(int i = 0; i < formats.length; ++i) {
+      assertEquals("cacheStopsAddingWhenFull " + i + " " + i,Formatter.format(formats[i],i));
+    }
+  }
+
+  @Test
+  void longFormatsAreNotCached() {
+    StringBuilder format = new StringBuilder("{} longFormatsAreNotCached");
+
+    while(format.length() <= Formatter.MAX_CACHED_FORMAT_LENGTH) {
+      format.append(" {{}");
+    }
+
+    final String longFormat = format.toString();
+
+    assertNotSame(Formatter.getTemplate(longFormat),Formatter.getTemplate(longFormat));
+    assertEquals(oldFormat(longFormat,new Object[] {"x"}),Formatter.format(longFormat,"x"));
+  }
+
+  @Test
+  void formatToLikeFormat() throws IOException {
+    Random rand = new Random(2);
+
+    for(int round = 0; round < 20_000; ++round) {
+      final String format = rand.nextBoolean() ? randomFormat(rand) : null;
+      final Object[] args = randomArgs(rand);
+      final String expected = "pre:" + Formatter.format(format,args);
+      final String message = format + " " + Arrays.toString(args);
+
+      assertEquals(expected,Formatter.formatTo(new StringBuilder("pre:"),format,args).toString(),message);
+      assertEquals(expected,Formatter.formatTo(new StringWriter().append("pre:"),format,args).toString(),message);
+      assertEquals(expected,Formatter.formatTo((Appendable)new StringBuilder("pre:"),format,args).toString()
+          ,message);
+
+      final int intArg = rand.nextInt();
+      final long longArg = rand.nextLong();
+      final double doubleArg = rand.nextDouble() * 1000.0;
+
+      assertEquals("pre:" + Formatter.format(format,intArg)
+          ,Formatter.formatTo(new StringBuilder("pre:"),format,intArg).toString(),message);
+      assertEquals("pre:" + Formatter.format(format,longArg)
+          ,Formatter.formatTo(new StringBuilder("pre:"),format,longArg).toString(),message);
+      assertEquals("pre:" + Formatter.format(format,doubleArg)
+          ,Formatter.formatTo(new StringBuilder("pre:"),format,doubleArg).toString(),message);
+    }
+  }
+
+  @Test
+  void formatToNullArgs() throws IOException {
+    final String format = "This is {} text.";
+
+    // A plain null must still compile (not be ambiguous with the primitive
+    //   overloads), & binds to Object[] like format().
+    assertEquals("This is {} text.",Formatter.formatTo(new StringBuilder(),format,null).toString());
+    assertEquals("This is {} text.",Formatter.formatTo(new StringWriter(),format,null).toString());
+    assertEquals("This is null text.",Formatter.formatTo(new StringBuilder(),format,(Object)null).toString());
+    assertEquals("This is null text.",Formatter.formatTo(new StringWriter(),format,(String)null).toString());
+    assertEquals("This is null text.",Formatter.formatTo(new StringBuilder(),format,null,null).toString());
+    assertEquals("",Formatter.formatTo(new StringBuilder(),null,1).toString());
+    assertEquals("",Formatter.formatTo(new StringWriter(),null,"x").toString());
+
+    // No slots, but the escapes are still unescaped, like format().
+    assertEquals("{}",Formatter.formatTo(new StringBuilder(),"{{}",7).toString());
+    assertEquals("7 {}",Formatter.formatTo(new StringBuilder(),"{} {}",7L).toString());
+  }
+
+  @Test
+  void localBufferIsReused() {
+    StringBuilder buffer = Formatter.localBuffer();
+    Formatter.formatTo(buffer,"Votes: {}",3);
+
+    assertEquals("Votes: 3",buffer.toString());
+    assertSame(buffer,Formatter.localBuffer());
+    assertEquals(0,buffer.length());
+  }
+
+  /**
+   * <pre>
+   * Formatter.format() from before Templates, which parsed the format on
+   * each call.
+   * </pre>
+   */
+  private static String oldFormat(String format,Object[] args) {
+    if(format == null || format.isEmpty()) {
+      return "";
+    }
+    if(args == null || args.length == 0) {
+      return format;
+    }
+
+    return render(format,args);
+  }
+
+  private static String render(String format,Object[] args) {
+    final int length = format.length();
+    int argIndex = 0;
+    StringBuilder buffer = new StringBuilder(length * 2);
+
+    for(int i = 0; i < length; ) {
+      final int codePoint = format.codePointAt(i);
+
+      if(codePoint == '{' && (i + 1) < length) {
+        final int codePoint2 = format.codePointAt(i + 1);
+
+        if(codePoint2 == '{') {
+          buffer.append('{');
+          i += 2;
+          continue;
+        }
+        if(codePoint2 == '}') {
+          buffer.append((argIndex < args.length) ? String.valueOf(args[argIndex++]) : "{}");
+          i += 2;
+          continue;
+        }
+      }
+
+      buffer.appendCodePoint(codePoint);
+      i += Character.charCount(codePoint);
+    }
+
+    return buffer.toString();
+  }
+
+  private static String randomFormat(Random rand) {
+    StringBuilder format = new StringBuilder();
+
+    for(int i = rand.nextInt(10); i > 0; --i) {
+      format.append(PIECES[rand.nextInt(PIECES.length)]);
+    }
+
+    return format.toString();
+  }
+
+  private static Object[] randomArgs(Random rand) {
+    final int count = rand.nextInt(6) - 1;
+
+    if(count < 0) {
+      return null;
+    }
+
+    Object[] args = new Object[count];
+
+    for(int i = 0; i < count; ++i) {
+      switch(rand.nextInt(5)) {
+        case 0:
+          args[i] = null;
+          break;
+
+        case 1:
+          args[i] = rand.nextInt(100);
+          break;
+
+        case 2:
+          args[i] = new StringBuilder("sb").append(i);
+          break;
+
+        case 3:
+          args[i] = "{}";
+          break;
+
+        default:
+          args[i] = "arg" + i;
+          break;
+      }
+    }
+
+    return args;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FuzzySearchTest {
+  @Test
+  void findFuzzyLikeBruteForce() {
+    Random rand = new Random(6);
+
+    for(int round = 0; round < 300; ++round) {
+      LinkedTrie<String> trie = new LinkedTrie<>();
+      ConcurrentLinkedTrie<String> concurrentTrie = new ConcurrentLinkedTrie<>();
+      TrieModel model = new TrieModel();
+      List<String> values = new ArrayList<>();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+        // Some keys are aliases of an earlier value.
+        String value = (!values.isEmpty() && rand.nextInt(4) == 0)
+            ? values.get(rand.nextInt(values.size())) : new String(key);
+
+        trie.add(key,value);
+        concurrentTrie.add(key,value);
+        model.add(key,value);
+        values.add(value);
+      }
+
+      for(int i = 0; i < 30; ++i) {
+        final String text = TrieModel.randomKey(rand,8);
+        final int maxDistance = rand.nextInt(4);
+        List<String> expected = new ArrayList<>();
+        final int expectedDistance = findFuzzy(model,text,maxDistance,expected);
+        final String message = text + " " + maxDistance + " " + model.getKeys();
+
+        List<String> matches = new ArrayList<>();
+        assertEquals(expectedDistance,trie.findFuzzy(text,maxDistance,matches),message);
+        assertSameValues(expected,matches,message);
+
+        matches.clear();
+        assertEquals(expectedDistance,concurrentTrie.findFuzzy(text,maxDistance,matches),message);
+        assertSameValues(expected,matches,message);
+      }
+    }
+  }
+
+  @Test
+  void findFuzzyExamples() {
+    LinkedTrie<String> trie = new LinkedTrie<>();
+    trie.add("left","left");
+    trie.add("lift","lift");
+    trie.add("up","up");
+    trie.addAlias("up","upp");
+
+    assertEquals(List.of("left"),trie.findFuzzy("lefft",1));
+    assertEquals(List.of("up"),trie.findFuzzy("uup",1));
+    assertEquals(List.of("left","lift"),trie.findFuzzy("laft",1));
+    assertEquals(List.of(),trie.findFuzzy("xyz",1));
+    assertEquals(List.of("up"),trie.findFuzzy("up",0));
+    assertEquals(-1,trie.findFuzzy("up",-1,new ArrayList<>()));
+    assertEquals(-1,trie.findFuzzy(null,1,new ArrayList<>()));
+
+    assertEquals("left",trie.findFuzzyUnique("lefft",1,null));
+    assertNull(trie.findFuzzyUnique("laft",1,null));
+  }
+
+  /**
+   * <pre>
+   * Checks every key, with the distinct values of the best keys in key order.
+   * </pre>
+   */
+  private static int findFuzzy(TrieModel model,String text,int maxDistance,List<String> matches) {
+    int bestDistance = maxDistance;
+
+    for(Map.Entry<String,String> entry: model.getKeys().entrySet()) {
+      final int distance = levenshtein(entry.getKey(),text);
+
+      if(distance > bestDistance) {
+        continue;
+      }
+      if(distance < bestDistance) {
+        bestDistance = distance;
+        matches.clear();
+      }
+      if(!containsSame(matches,entry.getValue())) {
+        matches.add(entry.getValue());
+      }
+    }
+
+    return matches.isEmpty() ? -1 : bestDistance;
+  }
+
+  private static int levenshtein(String a,String b) {
+    int[][] distances = new int[a.length() + 1][b.length() + 1];
+
+    for(int i = 0; i <= a.length(); ++i) {
+      for(int j = 0; j <= b.length(); ++j) {
+        if(i == 0 || j == 0) {
+          distances[i][j] = i + j;
+        }
+        else {
+          final int substitution = distances[i - 1][j - 1] + ((a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1);
+
+          distances[i][j] = Math.min(substitution
+              ,Math.min(distances[i - 1][j],distances[i][j - 1]) + 1);
+        }
+      }
+    }
+
+    return distances[a.length()][b.length()];
+  }
+
+  /**
+   * <pre>
+   * The tries only check aliases by identity (not equals()), so the values
+   * must be the same instances, in the same order.
+   * </pre>
+   */
+  private static void assertSameValues(List<String> expected,List<String> actual,String message) {
+    assertEquals(expected,actual,message);
+
+    for(int i = 0; i < expected.size(); ++i) {
+      assertSame(expected.get(i),actual.get(i),message);
+    }
+  }
+
+  private static boolean containsSame(List<String> values,String value) {
+    for(String v: values) {
+      if(v == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
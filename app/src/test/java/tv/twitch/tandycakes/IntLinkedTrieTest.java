@@ -0,0 +1,130 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntLinkedTrieTest {
+  @Test
+  void findLikeTheModel() {
+    Random rand = new Random(1);
+
+    for(int round = 0; round < 200; ++round) {
+      IntLinkedTrie trie = new IntLinkedTrie();
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+        final int value = model.getKeys().size();
+
+        // The model doesn't overwrite either, so the first value is kept.
+        trie.add(key,value);
+        model.add(key,String.valueOf(value));
+      }
+
+      for(String partial: model.buildPartials(rand)) {
+        assertEquals(toInt(model.find(partial,true)),trie.find(partial,-1,true),partial);
+        assertEquals(toInt(model.find(partial,false)),trie.find(partial,-1,false),partial);
+
+        // The same, but as a range of a bigger text.
+        StringBuilder text = new StringBuilder("  ").append(partial).append("  ");
+        assertEquals(trie.find(partial,-1,true),trie.find(text,2,2 + partial.length(),-1,true),partial);
+      }
+    }
+  }
+
+  @Test
+  void findTokensLikeFind() {
+    Random rand = new Random(2);
+
+    for(int round = 0; round < 100; ++round) {
+      IntLinkedTrie trie = new IntLinkedTrie(rand.nextBoolean());
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+        final int value = model.getKeys().size();
+
+        trie.add(key,value);
+        model.add(key,String.valueOf(value));
+      }
+
+      List<String> partials = model.buildPartials(rand);
+      final String text = " " + String.join("  ",partials) + " ";
+      final int[] values = new int[partials.size()];
+
+      assertEquals(partials.size(),trie.findTokens(text,values,-1));
+
+      for(int i = 0; i < values.length; ++i) {
+        assertEquals(trie.find(partials.get(i),-1),values[i],partials.get(i));
+      }
+
+      // Stops when the values are full.
+      final int[] fewer = new int[Math.min(3,values.length)];
+
+      assertEquals(fewer.length,trie.findTokens(text,fewer,-1));
+      for(int i = 0; i < fewer.length; ++i) {
+        assertEquals(values[i],fewer[i]);
+      }
+    }
+  }
+
+  @Test
+  void findLikeLinkedTrie() {
+    final String[] names = {"solarus","sol","zelda","lichess","chess","help","hello","hi"};
+    IntLinkedTrie trie = new IntLinkedTrie(true,true,true);
+    LinkedTrie<Integer> linkedTrie = new LinkedTrie<>(true,true,true);
+
+    for(int i = 0; i < names.length; ++i) {
+      trie.add(names[i],i);
+      linkedTrie.add(names[i],i);
+    }
+
+    final String[] partials = {"Sol","SOLA RUS","zel","Ch","he","hel","help me","hi","x",""," "};
+
+    for(String partial: partials) {
+      Integer expected = linkedTrie.find(partial);
+
+      assertEquals((expected != null) ? expected : -1,trie.find(partial,-1),partial);
+    }
+  }
+
+  @Test
+  void addDoesNotOverwrite() {
+    IntLinkedTrie votes = new IntLinkedTrie();
+    votes.add("left",0);
+    votes.add("right",1);
+    votes.add("left",2);
+    votes.addAlias(3,"l","r");
+
+    assertEquals(0,votes.find("le",-1));
+    assertEquals(0,votes.find("left",-1));
+    assertEquals(3,votes.find("l",-1));
+    assertEquals(1,votes.find("ri",-1));
+    assertEquals(-1,votes.find("up",-1));
+    assertArrayEquals(new int[] {0,1,-1},findTokens(votes," lef   rig up "));
+  }
+
+  private static int toInt(String value) {
+    return (value != null) ? Integer.parseInt(value) : -1;
+  }
+
+  private static int[] findTokens(IntLinkedTrie trie,String text) {
+    int[] values = new int[8];
+    final int count = trie.findTokens(text,values,-1);
+    int[] result = new int[count];
+
+    System.arraycopy(values,0,result,0,count);
+
+    return result;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinkedTrieTest {
+  @Test
+  void findLikeTheModel() {
+    Random rand = new Random(1);
+
+    for(int round = 0; round < 200; ++round) {
+      LinkedTrie<String> trie = new LinkedTrie<>();
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+
+        trie.add(key,key);
+        model.add(key,key);
+      }
+
+      for(String partial: model.buildPartials(rand)) {
+        assertEquals(model.find(partial,true),trie.find(partial,true),partial);
+        assertEquals(model.find(partial,false),trie.find(partial,false),partial);
+      }
+    }
+  }
+
+  @Test
+  void findAliases() {
+    final Integer solarus = 1;
+    final Integer lichess = 2;
+    LinkedTrie<Integer> trie = new LinkedTrie<>(false);
+    trie.addNameAndAlias("solarus",solarus,"sol","zelda");
+    trie.addNameAndAlias("lichess",lichess,"chess");
+
+    assertSame(solarus,trie.find("zel"));
+    assertSame(solarus,trie.find("so"));
+    assertSame(lichess,trie.find("ch"));
+    assertNull(trie.find("solarus2"));
+    assertSame(solarus,trie.find("solarus2",true));
+    assertNull(trie.find(""));
+    assertSame(lichess,trie.find("",lichess));
+  }
+
+  @Test
+  void addDoesNotOverwrite() {
+    LinkedTrie<String> trie = new LinkedTrie<>();
+    trie.add("help","1");
+    trie.add("help","2");
+
+    assertEquals("1",trie.find("help"));
+  }
+
+  @Test
+  void completeInCodePointOrder() {
+    LinkedTrie<Integer> trie = new LinkedTrie<>();
+    trie.add("hi",1);
+    trie.add("help",2);
+    trie.add("hello",3);
+    trie.add("he",4);
+    trie.add("x",5);
+
+    assertEquals(List.of("he","hello","help","hi"),keysOf(trie.complete("h",10)));
+    assertEquals(List.of("he","hello"),keysOf(trie.complete("h",2)));
+    assertEquals(List.of("hello","help"),keysOf(trie.complete("hel",10)));
+    assertEquals(List.of(),keysOf(trie.complete("z",10)));
+    assertEquals(List.of("he","hello","help","hi","x")
+        ,trie.stream("").map(Map.Entry::getKey).collect(Collectors.toList()));
+    assertEquals(5,trie.stream("").parallel().count());
+  }
+
+  @Test
+  void ignoreCaseAndSpace() {
+    LinkedTrie<String> trie = new LinkedTrie<>(true,true,true);
+    trie.add("Bt White","btwhite");
+
+    assertEquals("btwhite",trie.buildKey("Bt White"));
+    assertEquals("btwhite",trie.find("BTW"));
+    assertEquals("btwhite",trie.find("bt whi"));
+    assertEquals(List.of("btwhite"),keysOf(trie.complete("B T",10)));
+  }
+
+  @Test
+  void cursorLikeFindAndComplete() {
+    Random rand = new Random(3);
+
+    for(int round = 0; round < 200; ++round) {
+      LinkedTrie<String> trie = new LinkedTrie<>(rand.nextBoolean());
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+
+        trie.add(key,key);
+        model.add(key,key);
+      }
+
+      LinkedTrie.Cursor<String> cursor = trie.cursor();
+
+      for(String partial: model.buildPartials(rand)) {
+        cursor.reset();
+        assertCursor(trie,model,"",cursor);
+
+        // Type it, then backspace it all.
+        for(int i = 1; i <= partial.length(); ++i) {
+          cursor.advance(partial.charAt(i - 1));
+          assertCursor(trie,model,partial.substring(0,i),cursor);
+        }
+        for(int i = partial.length() - 1; i >= 0; --i) {
+          assertTrue(cursor.retreat(),partial);
+          assertCursor(trie,model,partial.substring(0,i),cursor);
+        }
+
+        assertFalse(cursor.retreat(),partial);
+      }
+    }
+  }
+
+  @Test
+  void cursorSeesLaterAdds() {
+    Random rand = new Random(4);
+
+    for(int round = 0; round < 200; ++round) {
+      LinkedTrie<String> trie = new LinkedTrie<>(rand.nextBoolean());
+      TrieModel model = new TrieModel();
+      List<LinkedTrie.Cursor<String>> cursors = new ArrayList<>();
+      List<String> partials = new ArrayList<>();
+
+      // Cursors typed into an empty trie are all past the end of a branch,
+      //   until the keys are added.
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        final String partial = TrieModel.randomKey(rand,6);
+        LinkedTrie.Cursor<String> cursor = trie.cursor();
+
+        cursor.advance(partial);
+        cursors.add(cursor);
+        partials.add(partial);
+
+        String key = TrieModel.randomKey(rand,6);
+
+        trie.add(key,key);
+        model.add(key,key);
+
+        for(int j = 0; j < cursors.size(); ++j) {
+          assertCursor(trie,model,partials.get(j),cursors.get(j));
+        }
+      }
+    }
+  }
+
+  @Test
+  void cursorExample() {
+    LinkedTrie<String> trie = new LinkedTrie<>(true,true,true);
+    trie.add("help","help");
+    trie.add("hello","hello");
+    trie.add("hi","hi");
+
+    LinkedTrie.Cursor<String> cursor = trie.cursor();
+
+    assertTrue(cursor.advance('H'));
+    assertTrue(cursor.isAmbiguous());
+    assertEquals(3,cursor.getCandidateCount());
+    assertTrue(cursor.advance("e l"));
+    assertEquals(2,cursor.getCandidateCount());
+    assertEquals(4,cursor.length());
+    assertTrue(cursor.advance('P'));
+    assertFalse(cursor.isAmbiguous());
+    assertTrue(cursor.isExact());
+    assertEquals("help",cursor.currentValue());
+
+    // Longer than "help".
+    assertFalse(cursor.advance("me"));
+    assertEquals("help",cursor.currentValue());
+    assertEquals(0,cursor.getCandidateCount());
+    assertEquals(7,cursor.length());
+
+    // Backspace back to "hel".
+    assertTrue(cursor.retreat());
+    assertTrue(cursor.retreat());
+    assertTrue(cursor.retreat());
+    assertTrue(cursor.isAmbiguous());
+    assertNull(cursor.currentValue());
+    assertEquals("x",cursor.currentValue("x"));
+
+    cursor.reset();
+    assertEquals(0,cursor.length());
+    assertNull(cursor.currentValue());
+    assertEquals(3,cursor.getCandidateCount());
+  }
+
+  /**
+   * <pre>
+   * The cursor at the partial must be the same as find() & complete() with it,
+   * & the model.
+   * </pre>
+   */
+  private static void assertCursor(LinkedTrie<String> trie,TrieModel model,String partial
+      ,LinkedTrie.Cursor<String> cursor) {
+    final String value = trie.find(partial);
+    final int candidateCount = trie.complete(partial,Integer.MAX_VALUE).size();
+
+    assertEquals(model.find(partial,trie.isAllowLonger()),value,partial);
+    assertEquals(value,cursor.currentValue(),partial);
+    assertEquals(candidateCount,cursor.getCandidateCount(),partial);
+    assertEquals(partial.length(),cursor.length(),partial);
+    assertEquals(!partial.isEmpty() && model.getKeys().containsKey(partial),cursor.isExact(),partial);
+    assertEquals(candidateCount > 1 && value == null,cursor.isAmbiguous(),partial);
+  }
+
+  private static List<String> keysOf(List<? extends Map.Entry<String,?>> entries) {
+    List<String> keys = new ArrayList<>();
+
+    for(Map.Entry<String,?> entry: entries) {
+      keys.add(entry.getKey());
+    }
+
+    return keys;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class LoggerTest {
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void levelGate() throws IOException {
+    Path file = tempDir.resolve("gate.log");
+    LogWriter writer = LogWriter.rollingFile(file,1024 * 1024,0);
+    Logger log = new Logger("test",Logger.Level.WARN,writer);
+
+    log.trace("trace");
+    log.debug("debug");
+    log.info("info");
+    log.warn("warn");
+    log.error("error");
+    log.setLevel(Logger.Level.TRACE);
+    log.trace("trace2");
+    log.log(Logger.Level.OFF,"off");
+    writer.close();
+
+    assertFalse(log.isEnabled(Logger.Level.OFF));
+    assertEquals(List.of("[WARN] test: warn","[ERROR] test: error","[TRACE] test: trace2"),readMessages(file));
+  }
+
+  @Test
+  void lazyArgs() throws IOException {
+    Path file = tempDir.resolve("lazy.log");
+    LogWriter writer = LogWriter.rollingFile(file,1024 * 1024,0);
+    Logger log = new Logger("test",Logger.Level.INFO,writer);
+    AtomicInteger callCount = new AtomicInteger();
+    Supplier<String> arg = () -> "called" + callCount.incrementAndGet();
+
+    log.debug("Not {}.",arg);
+    assertEquals(0,callCount.get());
+
+    log.info("Was {}.",arg);
+    assertEquals(1,callCount.get());
+
+    writer.close();
+
+    assertEquals(List.of("[INFO] test: Was called1."),readMessages(file));
+  }
+
+  @Test
+  void nullArgs() throws IOException {
+    Path file = tempDir.resolve("null.log");
+    LogWriter writer = LogWriter.rollingFile(file,1024 * 1024,0);
+    Logger log = new Logger("test",Logger.Level.INFO,writer);
+
+    // Binds to the Supplier overload.
+    log.info("This is {} text.",null);
+    log.info("This is {} text.",(Supplier<?>)null);
+    log.info("This is {} text.",(Object)null);
+    writer.close();
+
+    assertEquals(List.of(
+        "[INFO] test: " + Formatter.format("This is {} text.",(Object[])null)
+        ,"[INFO] test: This is null text."
+        ,"[INFO] test: This is null text."
+    ),readMessages(file));
+  }
+
+  @Test
+  void closeWritesEverything() throws IOException {
+    Path file = tempDir.resolve("close.log");
+    LogWriter writer = LogWriter.rollingFile(file,Long.MAX_VALUE,0);
+    Logger log = new Logger("test",Logger.Level.INFO,writer);
+    List<String> expected = new ArrayList<>();
+
+    // More than 1 batch.
+    for(int i = 0; i < (LogWriter.MAX_BATCH_SIZE * 4) + 1; ++i) {
+      log.info("line {}",i);
+      expected.add("[INFO] test: line " + i);
+    }
+
+    writer.close();
+    writer.close(); // Closing again is fine.
+
+    assertEquals(expected,readMessages(file));
+  }
+
+  @Test
+  void rollFiles() throws IOException {
+    Path file = tempDir.resolve("roll.log");
+    // Each line is about 30 bytes, so 2 lines per file.
+    LogWriter writer = LogWriter.rollingFile(file,70,2);
+    Logger log = new Logger("r",Logger.Level.INFO,writer);
+
+    for(int i = 1; i <= 7; ++i) {
+      log.info("line {}",i);
+      // 1 line per batch, so that the rolls are the same every time.
+      awaitMessage(file,"line " + i);
+    }
+
+    writer.close();
+
+    assertEquals(List.of("[INFO] r: line 7"),readMessages(file));
+    assertEquals(List.of("[INFO] r: line 5","[INFO] r: line 6"),readMessages(tempDir.resolve("roll.log.1")));
+    assertEquals(List.of("[INFO] r: line 3","[INFO] r: line 4"),readMessages(tempDir.resolve("roll.log.2")));
+    assertFalse(Files.exists(tempDir.resolve("roll.log.3")));
+  }
+
+  @Test
+  void rollWithoutBackups() throws IOException {
+    Path file = tempDir.resolve("nobackup.log");
+    LogWriter writer = LogWriter.rollingFile(file,50,0);
+    Logger log = new Logger("r",Logger.Level.INFO,writer);
+
+    for(int i = 1; i <= 3; ++i) {
+      log.info("line {}",i);
+      awaitMessage(file,"line " + i);
+    }
+
+    writer.close();
+
+    assertEquals(List.of("[INFO] r: line 3"),readMessages(file));
+    assertFalse(Files.exists(tempDir.resolve("nobackup.log.1")));
+  }
+
+  @Test
+  void newStdoutAfterClose() {
+    LogWriter writer = LogWriter.stdout();
+
+    assertSame(writer,LogWriter.stdout());
+    writer.close();
+    assertNotSame(writer,LogWriter.stdout());
+  }
+
+  /**
+   * <pre>
+   * The messages without the time, such as "[INFO] test: text".
+   * </pre>
+   */
+  private static List<String> readMessages(Path file) throws IOException {
+    List<String> messages = new ArrayList<>();
+
+    for(String line: Files.readAllLines(file,StandardCharsets.UTF_8)) {
+      final int levelIndex = line.indexOf(" [");
+
+      assertTrue(levelIndex > 0,line);
+      messages.add(line.substring(levelIndex + 1));
+    }
+
+    return messages;
+  }
+
+  private static void awaitMessage(Path file,String message) throws IOException {
+    final long endTime = System.nanoTime() + 5_000_000_000L;
+
+    while(System.nanoTime() < endTime) {
+      if(Files.exists(file) && Files.readString(file,StandardCharsets.UTF_8).contains(message)) {
+        return;
+      }
+
+      Thread.onSpinWait();
+    }
+
+    fail("Timed out waiting for: " + message);
+  }
+}
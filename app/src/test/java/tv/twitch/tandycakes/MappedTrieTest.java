@@ -0,0 +1,172 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedTrieTest {
+  private static final String SUFFIX = "\u00e9\ud83c\udf70"; // An accented "e" & a cake emoji.
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void roundTripLikeTheArrayTrie() throws IOException {
+    Random rand = new Random(10);
+    Path file = tempDir.resolve("trie.bin");
+
+    for(int round = 0; round < 100; ++round) {
+      final boolean allowLonger = rand.nextBoolean();
+      LinkedTrie<String> linked = new LinkedTrie<>(allowLonger);
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(30); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,6);
+
+        linked.add(key,key);
+        model.add(key,key);
+      }
+
+      ArrayTrie<String> array = linked.compile();
+      // Non-ASCII, so that the UTF-8 offsets are checked too.
+      MappedTrie.write(array,file,(value) -> value + SUFFIX);
+      MappedTrie mapped = MappedTrie.open(file);
+
+      assertEquals(allowLonger,mapped.isAllowLonger());
+      assertEquals(array.getNodeCount(),mapped.getNodeCount());
+      assertEquals(array.getValueCount(),mapped.getValueCount());
+
+      for(String partial: model.buildPartials(rand)) {
+        for(boolean isLonger: new boolean[] {true,false}) {
+          String expected = array.find(partial,isLonger);
+
+          assertEquals(array.findIndex(partial,isLonger),mapped.findIndex(partial,isLonger),partial);
+          assertEquals((expected != null) ? (expected + SUFFIX) : null
+              ,mapped.find(partial,isLonger),partial);
+        }
+      }
+    }
+  }
+
+  @Test
+  void roundTripTheFlags() throws IOException {
+    Path file = tempDir.resolve("flags.bin");
+    LinkedTrie<String> linked = new LinkedTrie<>(false,true,true);
+    linked.add("Bt White","btwhite");
+    MappedTrie.write(linked,file,String::valueOf);
+    MappedTrie mapped = MappedTrie.open(file);
+
+    assertFalse(mapped.isAllowLonger());
+    assertTrue(mapped.isIgnoreCase());
+    assertTrue(mapped.isIgnoreSpace());
+    assertEquals("btwhite",mapped.find("BT w"));
+    assertEquals("x",mapped.find("nope","x"));
+  }
+
+  @Test
+  void roundTripAnEmptyTrie() throws IOException {
+    Path file = tempDir.resolve("empty.bin");
+    MappedTrie.write(new LinkedTrie<String>(),file,String::valueOf);
+    MappedTrie mapped = MappedTrie.open(file);
+
+    assertEquals(1,mapped.getNodeCount());
+    assertEquals(0,mapped.getValueCount());
+    assertNull(mapped.find("a"));
+  }
+
+  @Test
+  void rejectTruncatedFiles() throws IOException {
+    final byte[] bytes = writeBytes();
+
+    for(int length = 0; length < bytes.length; ++length) {
+      final ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(bytes,length));
+
+      assertThrows(IllegalArgumentException.class,() -> new MappedTrie(buffer),"length: " + length);
+    }
+
+    assertEquals("sol",new MappedTrie(ByteBuffer.wrap(bytes)).find("so"));
+  }
+
+  @Test
+  void rejectCorruptHeaders() throws IOException {
+    final byte[] bytes = writeBytes();
+
+    assertCorrupt(bytes,0,MappedTrie.MAGIC + 1);
+    assertCorrupt(bytes,4,MappedTrie.VERSION + 1);
+    assertCorrupt(bytes,12,0); // Nodes.
+    assertCorrupt(bytes,12,Integer.MAX_VALUE);
+    assertCorrupt(bytes,16,-1); // Values.
+    assertCorrupt(bytes,16,Integer.MAX_VALUE);
+    assertCorrupt(bytes,20,1); // firstEdges[0].
+
+    final int nodeCount = ByteBuffer.wrap(bytes).getInt(12);
+
+    assertCorrupt(bytes,20 + (nodeCount * Integer.BYTES),nodeCount); // firstEdges[nodeCount].
+  }
+
+  @Test
+  void rejectCorruptSections() throws IOException {
+    final byte[] bytes = writeBytes();
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    final int nodeCount = buffer.getInt(12);
+    final int valueCount = buffer.getInt(16);
+    final int firstEdges = 20;
+    final int edgeKeys = firstEdges + ((nodeCount + 1) * Integer.BYTES);
+    final int valueIndexes = edgeKeys + ((nodeCount - 1) * Integer.BYTES);
+    final int completionIndexes = valueIndexes + (nodeCount * Integer.BYTES);
+    final int valueOffsets = completionIndexes + (nodeCount * Integer.BYTES);
+    final int valuesSize = buffer.getInt(valueOffsets + (valueCount * Integer.BYTES));
+
+    // The root has 2 edges ("l" & "s"), so node 1 would start after node 2.
+    assertEquals(2,buffer.getInt(firstEdges + Integer.BYTES));
+    assertCorrupt(bytes,firstEdges + Integer.BYTES,nodeCount);
+    assertCorrupt(bytes,edgeKeys,'z'); // Unsorted.
+    assertCorrupt(bytes,valueIndexes,valueCount);
+    assertCorrupt(bytes,valueIndexes + Integer.BYTES,-2);
+    assertCorrupt(bytes,completionIndexes + Integer.BYTES,valueCount);
+    assertCorrupt(bytes,valueOffsets + Integer.BYTES,valuesSize + 1);
+
+    // Every value of a valid file is fine.
+    MappedTrie mapped = new MappedTrie(ByteBuffer.wrap(bytes));
+
+    for(int i = 0; i < mapped.getValueCount(); ++i) {
+      mapped.getValue(i);
+    }
+  }
+
+  private byte[] writeBytes() throws IOException {
+    Path file = tempDir.resolve("small.bin");
+    LinkedTrie<String> linked = new LinkedTrie<>();
+    linked.add("sol","sol");
+    linked.add("lichess","lichess");
+    MappedTrie.write(linked,file,String::valueOf);
+
+    return Files.readAllBytes(file);
+  }
+
+  private static void assertCorrupt(byte[] bytes,int offset,int value) {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).putInt(offset,value);
+
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,() -> new MappedTrie(buffer)
+        ,"offset: " + offset);
+
+    assertTrue(e.getMessage().contains("trie file"),e.getMessage());
+  }
+}
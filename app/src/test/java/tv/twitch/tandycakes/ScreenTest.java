@@ -0,0 +1,369 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScreenTest {
+  private static final int WIDTH = 12;
+  private static final int HEIGHT = 3;
+  private static final String[] TEXTS = {"a","bc","xyz","    ","漢","漢字","🍰","q́"};
+  private static final String[] STYLES = {null,"bold","red","bold/red"};
+
+  @Test
+  void renderOnlyTheChanges() {
+    Output output = new Output();
+    Screen screen = output.newScreen();
+
+    screen.put(0,0,"Votes","bold");
+    screen.put(0,1,"up: 1");
+    screen.forceRender();
+
+    Terminal terminal = output.apply(new Terminal());
+
+    assertEquals("Votes       |up: 1       |            ",terminal.text());
+    assertEquals(WIDTH * HEIGHT,terminal.writtenCount);
+
+    // Frame B only changes 1 cell.
+    screen.clear();
+    screen.put(0,0,"Votes","bold");
+    screen.put(0,1,"up: 2");
+    screen.forceRender();
+
+    // The style is unknown at the start of each render, so it's reset.
+    assertEquals("\u001b[2;5H\u001b[0m2",output.take());
+    assertEquals("\u001b[2;5H\u001b[0m2".length(),screen.getLastOutputLength());
+
+    // Nothing changed.
+    screen.forceRender();
+
+    assertEquals("",output.take());
+    assertEquals(0,screen.getLastOutputLength());
+
+    // A small gap between 2 changes is re-written instead of moved over.
+    screen.put(0,1,"dn: 2 3");
+    screen.forceRender();
+
+    assertEquals("\u001b[2;1H\u001b[0mdn: 2 3",output.take());
+  }
+
+  @Test
+  void fullRepaintAfterInvalidateOrMove() {
+    Output output = new Output();
+    Screen screen = output.newScreen();
+
+    screen.put(2,1,"漢x","red");
+    screen.forceRender();
+
+    Terminal terminal = output.apply(new Terminal());
+
+    // Such as after the terminal was cleared or resized.
+    screen.invalidate();
+    screen.forceRender();
+    output.apply(terminal);
+
+    assertEquals(WIDTH * HEIGHT,terminal.writtenCount);
+    assertEquals("            |  漢x       |            ",terminal.text());
+
+    // Moved, so everything is written again, at the new origin.
+    screen.setOrigin(4,3);
+    screen.forceRender();
+
+    terminal = output.apply(new Terminal());
+
+    assertEquals(WIDTH * HEIGHT,terminal.writtenCount);
+    assertEquals(3,terminal.minRow);
+    assertEquals(2,terminal.minCol);
+  }
+
+  @Test
+  void clearOnlyRewritesWhatWasThere() {
+    Output output = new Output();
+    Screen screen = output.newScreen();
+
+    screen.put(0,0,"ab");
+    screen.put(8,2,"漢","bold");
+    screen.forceRender();
+
+    Terminal terminal = output.apply(new Terminal());
+
+    screen.clear();
+    screen.forceRender();
+    output.apply(terminal);
+
+    assertEquals(4,terminal.writtenCount);
+    assertEquals("            |            |            ",terminal.text());
+  }
+
+  @Test
+  void renderLikeAFullRepaint() {
+    Random rand = new Random(19);
+
+    for(int round = 0; round < 100; ++round) {
+      Output output = new Output();
+      Screen screen = output.newScreen();
+      Terminal terminal = new Terminal();
+
+      for(int frame = 0; frame < 20; ++frame) {
+        if(rand.nextInt(4) == 0) {
+          screen.clear();
+        }
+
+        for(int i = rand.nextInt(5); i >= 0; --i) {
+          screen.put(rand.nextInt(WIDTH + 2) - 2,rand.nextInt(HEIGHT),TEXTS[rand.nextInt(TEXTS.length)]
+              ,STYLES[rand.nextInt(STYLES.length)]);
+        }
+
+        screen.forceRender();
+
+        final Terminal last = terminal.copy();
+
+        output.apply(terminal);
+
+        // The same frame, with every cell written.
+        screen.invalidate();
+        screen.forceRender();
+
+        final Terminal full = output.apply(new Terminal());
+        final String message = "round " + round + ", frame " + frame;
+
+        assertEquals(full.text(),terminal.text(),message);
+        assertEquals(full.styles(),terminal.styles(),message);
+
+        // Only the changed cells were written, or small gaps between them
+        //   (the first render writes everything).
+        for(int y = 0; y < HEIGHT && frame > 0; ++y) {
+          for(int x = 0; x < WIDTH; ++x) {
+            if(terminal.written[y][x] && !full.isChanged(last,y,x) && !full.isWideChanged(last,y,x)) {
+              assertTrue(full.isChangedNear(last,y,x,-1) && full.isChangedNear(last,y,x,1)
+                  ,message + ", cell " + x + "," + y);
+            }
+          }
+        }
+
+        terminal = full;
+      }
+    }
+  }
+
+  /**
+   * <pre>
+   * A Fansi that writes into bytes, for the screens.
+   * </pre>
+   */
+  private static final class Output {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Fansi fansi = new Fansi();
+
+    private Output() {
+      fansi.setOut(new PrintStream(bytes,true,StandardCharsets.UTF_8));
+    }
+
+    private Screen newScreen() {
+      Screen screen = new Screen(fansi,WIDTH,HEIGHT);
+      screen.setMaxFps(0);
+
+      return screen;
+    }
+
+    private String take() {
+      String text = bytes.toString(StandardCharsets.UTF_8);
+      bytes.reset();
+
+      return text;
+    }
+
+    private Terminal apply(Terminal terminal) {
+      terminal.write(take());
+
+      return terminal;
+    }
+  }
+
+  /**
+   * <pre>
+   * Just enough of a terminal for Screen: cursor moves, SGR, and chars
+   * (with wide chars taking up 2 cells).
+   * </pre>
+   */
+  private static final class Terminal {
+    private static final int ROWS = 10;
+    private static final int COLS = 20;
+
+    private final String[][] cells = new String[ROWS][COLS];
+    private final String[][] cellStyles = new String[ROWS][COLS];
+    // The cells written by the last write().
+    private final boolean[][] written = new boolean[ROWS][COLS];
+    private int writtenCount = 0;
+    private int row = 0;
+    private int col = 0;
+    private String style = "";
+    private int minRow = ROWS;
+    private int minCol = COLS;
+
+    private Terminal() {
+      for(int r = 0; r < ROWS; ++r) {
+        for(int c = 0; c < COLS; ++c) {
+          cells[r][c] = " ";
+          cellStyles[r][c] = "";
+        }
+      }
+    }
+
+    private Terminal copy() {
+      Terminal copy = new Terminal();
+
+      for(int r = 0; r < ROWS; ++r) {
+        System.arraycopy(cells[r],0,copy.cells[r],0,COLS);
+        System.arraycopy(cellStyles[r],0,copy.cellStyles[r],0,COLS);
+      }
+
+      return copy;
+    }
+
+    private void write(String text) {
+      int codePoint;
+
+      for(boolean[] writtenRow: written) {
+        Arrays.fill(writtenRow,false);
+      }
+
+      writtenCount = 0;
+
+      for(int i = 0; i < text.length(); i += Character.charCount(codePoint)) {
+        codePoint = text.codePointAt(i);
+
+        if(codePoint == '\u001b') {
+          final int end = i + 2 + findFinal(text,i + 2);
+          final String params = text.substring(i + 2,end);
+          final char command = text.charAt(end);
+
+          if(command == 'H') {
+            String[] coords = params.split(";");
+            row = Integer.parseInt(coords[0]) - 1;
+            col = Integer.parseInt(coords[1]) - 1;
+          }
+          else if(command == 'C') {
+            col += Integer.parseInt(params);
+          }
+          else if(command == 'm') {
+            style = params.equals("0") ? "" : (style + text.substring(i,end + 1));
+          }
+
+          codePoint = command;
+          i = end;
+          continue;
+        }
+
+        final int charWidth = Screen.calcCharWidth(codePoint);
+
+        cells[row][col] = new String(Character.toChars(codePoint));
+        cellStyles[row][col] = style;
+        minRow = Math.min(minRow,row);
+        minCol = Math.min(minCol,col);
+        written[row][col] = true;
+        ++writtenCount;
+
+        if(charWidth == 2) {
+          cells[row][col + 1] = "";
+          cellStyles[row][col + 1] = style;
+          written[row][col + 1] = true;
+          ++writtenCount;
+        }
+
+        col += charWidth;
+      }
+    }
+
+    private boolean isChanged(Terminal last,int y,int x) {
+      return !cells[y][x].equals(last.cells[y][x]) || !cellStyles[y][x].equals(last.cellStyles[y][x]);
+    }
+
+    /**
+     * <pre>
+     * Whether the other half of a wide char changed, since both halves are
+     * written together.
+     * </pre>
+     */
+    private boolean isWideChanged(Terminal last,int y,int x) {
+      if(cells[y][x].isEmpty()) {
+        return x > 0 && isChanged(last,y,x - 1);
+      }
+
+      return (x + 1) < WIDTH && cells[y][x + 1].isEmpty() && isChanged(last,y,x + 1);
+    }
+
+    /**
+     * <pre>
+     * Whether a cell within a re-write gap (see Screen) on the side
+     * (-1 left, 1 right) changed.
+     * </pre>
+     */
+    private boolean isChangedNear(Terminal last,int y,int x,int side) {
+      for(int i = 1; i <= 5; ++i) {
+        final int nearX = x + (side * i);
+
+        if(nearX >= 0 && nearX < WIDTH && isChanged(last,y,nearX)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private static int findFinal(String text,int start) {
+      int i = start;
+
+      while(!Character.isLetter(text.charAt(i))) {
+        ++i;
+      }
+
+      return i - start;
+    }
+
+    /**
+     * <pre>
+     * The top left of the screen as text, with "|" between rows.
+     * </pre>
+     */
+    private String text() {
+      StringBuilder text = new StringBuilder();
+
+      for(int r = 0; r < HEIGHT; ++r) {
+        if(r > 0) {
+          text.append('|');
+        }
+        for(int c = 0; c < WIDTH; ++c) {
+          text.append(cells[r][c]);
+        }
+      }
+
+      return text.toString();
+    }
+
+    private String styles() {
+      StringBuilder styles = new StringBuilder();
+
+      for(int r = 0; r < HEIGHT; ++r) {
+        for(int c = 0; c < WIDTH; ++c) {
+          // Spaces look the same unless they have a background.
+          styles.append(cells[r][c].equals(" ") ? "" : cellStyles[r][c]).append(',');
+        }
+      }
+
+      return styles.toString();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * <pre>
+ * A slow but obvious model of the tries' find(), for checking them against.
+ *
+ * The keys are plain (no ignoreCase/ignoreSpace) & ASCII, so that a key's
+ * chars are its code points.
+ * </pre>
+ */
+final class TrieModel {
+  private final NavigableMap<String,String> keys = new TreeMap<>();
+
+  /**
+   * <pre>
+   * Doesn't overwrite an existing key, like the tries.
+   * </pre>
+   */
+  void add(String key,String value) {
+    keys.putIfAbsent(key,value);
+  }
+
+  void remove(String key) {
+    keys.remove(key);
+  }
+
+  Map<String,String> getKeys() {
+    return keys;
+  }
+
+  /**
+   * <pre>
+   * If the partial is on a path of the keys, then its completion.
+   * Else (a longer partial), the value of the deepest node on its path
+   * (if allowLonger & it's a key).
+   * </pre>
+   */
+  String find(String partial,boolean allowLonger) {
+    if(partial.isEmpty()) {
+      return null;
+    }
+
+    int pathLength = partial.length();
+
+    while(pathLength > 0 && !isOnPath(partial.substring(0,pathLength))) {
+      --pathLength;
+    }
+
+    if(pathLength == partial.length()) {
+      return complete(partial);
+    }
+
+    return allowLonger ? keys.get(partial.substring(0,pathLength)) : null;
+  }
+
+  /**
+   * <pre>
+   * The node's own value, else the completion of its only child, else null.
+   * </pre>
+   */
+  private String complete(String node) {
+    String value = keys.get(node);
+
+    if(value != null) {
+      return value;
+    }
+
+    Character onlyChild = null;
+
+    for(String key: keys.tailMap(node,false).keySet()) {
+      if(!key.startsWith(node)) {
+        break;
+      }
+
+      final char child = key.charAt(node.length());
+
+      if(onlyChild == null) {
+        onlyChild = child;
+      }
+      else if(onlyChild != child) {
+        return null;
+      }
+    }
+
+    return (onlyChild != null) ? complete(node + onlyChild) : null;
+  }
+
+  private boolean isOnPath(String prefix) {
+    String ceiling = keys.ceilingKey(prefix);
+
+    return ceiling != null && ceiling.startsWith(prefix);
+  }
+
+  /**
+   * <pre>
+   * Random keys from a small alphabet, so that they share a lot of prefixes.
+   * </pre>
+   */
+  static String randomKey(Random rand,int maxLength) {
+    final int length = 1 + rand.nextInt(maxLength);
+    StringBuilder key = new StringBuilder(length);
+
+    for(int i = 0; i < length; ++i) {
+      key.append((char)('a' + rand.nextInt(4)));
+    }
+
+    return key.toString();
+  }
+
+  /**
+   * <pre>
+   * Every prefix of every key, plus some random (mostly missing) partials
+   * & longer partials.
+   * </pre>
+   */
+  List<String> buildPartials(Random rand) {
+    List<String> partials = new ArrayList<>();
+
+    for(String key: keys.keySet()) {
+      for(int i = 1; i <= key.length(); ++i) {
+        partials.add(key.substring(0,i));
+      }
+
+      partials.add(key + randomKey(rand,3));
+    }
+
+    for(int i = 0; i < 50; ++i) {
+      partials.add(randomKey(rand,8));
+    }
+
+    return partials;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrieScannerTest {
+  @Test
+  void scanLikeNaiveMatching() {
+    Random rand = new Random(8);
+
+    for(int round = 0; round < 300; ++round) {
+      LinkedTrie<String> trie = new LinkedTrie<>();
+      TrieModel model = new TrieModel();
+
+      for(int i = rand.nextInt(15); i >= 0; --i) {
+        String key = TrieModel.randomKey(rand,5);
+
+        trie.add(key,key);
+        model.add(key,key);
+      }
+
+      TrieScanner<String> scanner = trie.compileScanner();
+      String text = TrieModel.randomKey(rand,40);
+      List<String> matches = new ArrayList<>();
+
+      // Checks the failure & output links, since naive matching has none.
+      final int count = scanner.scan(text,(start,end,value) -> matches.add(start + "," + end + "=" + value));
+
+      assertEquals(scanNaively(model,text),matches,text);
+      assertEquals(matches.size(),count);
+    }
+  }
+
+  @Test
+  void scanTheExample() {
+    LinkedTrie<String> trie = new LinkedTrie<>(true,true,false);
+    trie.add("he","he");
+    trie.add("she","she");
+    trie.add("hers","hers");
+    List<String> matches = new ArrayList<>();
+
+    trie.compileScanner().scan("UShers",(start,end,value) -> matches.add(start + "," + end + "=" + value));
+
+    assertEquals(List.of("1,4=she","2,4=he","2,6=hers"),matches);
+  }
+
+  @Test
+  void scanIgnoringSpace() {
+    LinkedTrie<String> trie = new LinkedTrie<>(true,false,true);
+    trie.add("bad","bad");
+    List<String> matches = new ArrayList<>();
+
+    TrieScanner<String> scanner = trie.compileScanner();
+    scanner.scan("so b a d!",(start,end,value) -> matches.add(start + "," + end + "=" + value));
+
+    assertEquals(List.of("3,8=bad"),matches);
+    assertTrue(scanner.containsAny("xbadx"));
+    assertFalse(scanner.containsAny("ba-d"));
+  }
+
+  @Test
+  void scanStops() {
+    LinkedTrie<String> trie = new LinkedTrie<>();
+    trie.add("a","a");
+
+    assertEquals(1,trie.compileScanner().scan("aaa",(start,end,value) -> false));
+  }
+
+  /**
+   * <pre>
+   * In order of the ends, longest first.
+   * </pre>
+   */
+  private static List<String> scanNaively(TrieModel model,String text) {
+    List<String> matches = new ArrayList<>();
+
+    for(int end = 1; end <= text.length(); ++end) {
+      for(int start = 0; start < end; ++start) {
+        String value = model.getKeys().get(text.substring(start,end));
+
+        if(value != null) {
+          matches.add(start + "," + end + "=" + value);
+        }
+      }
+    }
+
+    return matches;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ArrayMapTest {
+  @Test
+  void likeALinkedHashMap() {
+    Random rand = new Random(22);
+
+    for(int round = 0; round < 200; ++round) {
+      ArrayMap<String,Integer> map = new ArrayMap<>();
+      Map<String,Integer> model = new LinkedHashMap<>();
+
+      for(int op = 0; op < 40; ++op) {
+        final String key = (rand.nextInt(10) == 0) ? null : String.valueOf(rand.nextInt(12));
+        final Integer value = rand.nextInt(100);
+
+        switch(rand.nextInt(4)) {
+          case 0:
+            assertEquals(model.remove(key),map.remove(key),key);
+            break;
+
+          case 1:
+            assertEquals(model.get(key),map.get(key),key);
+            assertEquals(model.containsKey(key),map.containsKey(key),key);
+            break;
+
+          default:
+            assertEquals(model.put(key,value),map.put(key,value),key);
+            break;
+        }
+
+        assertEquals(model.size(),map.size());
+        // In insertion order.
+        assertEquals(new ArrayList<>(model.entrySet()),new ArrayList<>(map.entrySet()));
+      }
+
+      assertEquals(model,map);
+      assertEquals(model.hashCode(),map.hashCode());
+    }
+  }
+
+  @Test
+  void iteratorRemove() {
+    Random rand = new Random(23);
+
+    for(int round = 0; round < 200; ++round) {
+      ArrayMap<Integer,Integer> map = new ArrayMap<>();
+      Map<Integer,Integer> model = new LinkedHashMap<>();
+
+      for(int i = rand.nextInt(10); i >= 0; --i) {
+        map.put(i * 7 % 11,i);
+        model.put(i * 7 % 11,i);
+      }
+
+      Iterator<Map.Entry<Integer,Integer>> it = map.entrySet().iterator();
+      Iterator<Map.Entry<Integer,Integer>> modelIt = model.entrySet().iterator();
+
+      while(modelIt.hasNext()) {
+        assertEquals(modelIt.next(),it.next());
+
+        if(rand.nextBoolean()) {
+          it.remove();
+          modelIt.remove();
+        }
+      }
+
+      assertFalse(it.hasNext());
+      assertEquals(new ArrayList<>(model.entrySet()),new ArrayList<>(map.entrySet()));
+    }
+  }
+
+  @Test
+  void iteratorMisuse() {
+    ArrayMap<String,String> map = new ArrayMap<>();
+    map.put("a","1");
+    map.put("b","2");
+
+    final Iterator<Map.Entry<String,String>> it = map.entrySet().iterator();
+
+    assertThrows(IllegalStateException.class,it::remove);
+    it.next();
+    it.remove();
+    assertThrows(IllegalStateException.class,it::remove);
+    it.next();
+    assertThrows(NoSuchElementException.class,it::next);
+
+    final Iterator<Map.Entry<String,String>> it2 = map.entrySet().iterator();
+    map.put("c","3");
+
+    assertThrows(ConcurrentModificationException.class,it2::next);
+  }
+
+  @Test
+  void entrySetValue() {
+    ArrayMap<String,String> map = new ArrayMap<>();
+    map.put("a","1");
+
+    for(Map.Entry<String,String> entry: map.entrySet()) {
+      assertEquals("1",entry.setValue("2"));
+    }
+
+    assertEquals(Map.of("a","2"),map);
+    assertEquals("a=2",map.entrySet().iterator().next().toString());
+  }
+}
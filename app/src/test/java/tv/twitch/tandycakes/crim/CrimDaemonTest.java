@@ -0,0 +1,210 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tv.twitch.tandycakes.error.CrimException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrimDaemonTest {
+  @TempDir
+  Path tempDir;
+
+  private Crim crim;
+  private CrimDaemon daemon;
+  private Thread daemonThread;
+
+  @BeforeEach
+  void startDaemon() throws IOException {
+    crim = new Crim("test","1.0");
+    crim.fansi.disable();
+    crim.addDefaults();
+    crim.addShellCommand();
+
+    crim.root.command("echo <text>")
+             .run((crim,cmd,data) -> crim.fansi.println(data.args().get("<text>")));
+    crim.root.command("prompt")
+             .run((crim,cmd,data) -> crim.fansi.print("name? "));
+    crim.root.command("boom")
+             .run((crim,cmd,data) -> {
+               throw new IllegalStateException("boom");
+             });
+
+    runDaemon(tempDir.resolve("d.sock"));
+  }
+
+  private void runDaemon(Path socketFile) throws IOException {
+    daemon = new CrimDaemon(crim,socketFile);
+    daemonThread = new Thread(() -> {
+      try {
+        daemon.run();
+      }
+      catch(IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    daemonThread.setDaemon(true);
+    daemonThread.start();
+  }
+
+  @AfterEach
+  void stopDaemon() throws Exception {
+    daemon.close();
+    daemonThread.join(5000);
+
+    assertFalse(daemonThread.isAlive());
+    assertFalse(Files.exists(daemon.socketFile));
+  }
+
+  @Test
+  void socketIsPrivate() throws IOException {
+    assertEquals(PosixFilePermissions.fromString("rw-------")
+        ,Files.getPosixFilePermissions(daemon.socketFile));
+
+    assertEquals(PosixFilePermissions.fromString("rw-------")
+        ,Files.getPosixFilePermissions(daemon.lockFile));
+
+    // No temp dir from binding is left over.
+    try(Stream<Path> files = Files.list(tempDir)) {
+      assertEquals(Set.of(daemon.socketFile,daemon.lockFile),files.collect(Collectors.toSet()));
+    }
+  }
+
+  @Test
+  void onlyOneDaemonPerSocket() throws IOException {
+    assertThrows(CrimException.class,() -> new CrimDaemon(crim,daemon.socketFile));
+    assertThrows(CrimException.class,() -> new CrimDaemon(crim,daemon.socketFile));
+
+    // The running daemon's socket wasn't touched.
+    assertEquals("1 hi\nx 0\n",send(request("echo","hi")));
+
+    // Like another daemon that's still binding (no socket file yet).
+    final Path otherSocketFile = tempDir.resolve("o.sock");
+
+    try(FileChannel lockChannel = FileChannel.open(tempDir.resolve("o.sock.lock")
+        ,StandardOpenOption.CREATE,StandardOpenOption.WRITE)) {
+      lockChannel.lock();
+      assertThrows(CrimException.class,() -> new CrimDaemon(crim,otherSocketFile));
+    }
+
+    assertFalse(Files.exists(otherSocketFile));
+  }
+
+  @Test
+  void restartAfterKilled() throws Exception {
+    stopDaemon();
+
+    // A killed daemon leaves its socket file (& the lock file) behind.
+    Files.createFile(daemon.socketFile);
+    runDaemon(daemon.socketFile);
+
+    assertEquals("1 hi\nx 0\n",send(request("echo","hi")));
+  }
+
+  @Test
+  void stdoutLines() throws IOException {
+    // UTF-8, & a newline in an arg is just 2 lines of output.
+    assertEquals("1 h\u00e9llo\n1 w\u00f6rld\nx 0\n",send(request("echo","h\u00e9llo\nw\u00f6rld")));
+  }
+
+  @Test
+  void stdoutWithoutNewline() throws IOException {
+    assertEquals("1-name? \nx 0\n",send(request("prompt")));
+  }
+
+  @Test
+  void stderrOnFailure() throws IOException {
+    String response = send(request("boom"));
+
+    assertTrue(response.startsWith("2 java.lang.IllegalStateException: boom\n"),response);
+    assertTrue(response.endsWith("\nx 1\n"),response);
+  }
+
+  @Test
+  void invalidArgsShowHelp() throws IOException {
+    String response = send(request("bogus"));
+
+    assertTrue(response.contains("Invalid option/command: 'bogus'."),response);
+    assertTrue(response.endsWith("\nx 0\n"),response);
+  }
+
+  @Test
+  void interactiveRunsLocally() throws IOException {
+    final String runLocally = "x " + CrimDaemon.RUN_LOCALLY_EXIT_CODE + "\n";
+
+    // Prefixes are resolved like any parse.
+    assertEquals(runLocally,send(request("shell")));
+    assertEquals(runLocally,send(request("sh","--time")));
+    // But not if an option runner wins.
+    assertTrue(send(request("shell","--help")).endsWith("\nx 0\n"));
+  }
+
+  @Test
+  void badRequests() throws IOException {
+    assertEquals("2 Bad request: Invalid arg count.\nx 2\n",send("abc\n".getBytes(StandardCharsets.US_ASCII)));
+    assertEquals("2 Bad request: Missing args.\nx 2\n",send("2\necho\0".getBytes(StandardCharsets.US_ASCII)));
+    assertEquals("2 Bad request: Too many args.\nx 2\n"
+        ,send(((CrimDaemon.MAX_ARGS + 1) + "\n").getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  void noArgsRunsRoot() throws IOException {
+    String response = send(request());
+
+    assertTrue(response.startsWith("1 "),response);
+    assertTrue(response.endsWith("\nx 0\n"),response);
+  }
+
+  /**
+   * <pre>
+   * "<arg count>\n" & then each arg ending with "\0".
+   * </pre>
+   */
+  private static byte[] request(String... args) {
+    ByteArrayOutputStream request = new ByteArrayOutputStream();
+    request.writeBytes((args.length + "\n").getBytes(StandardCharsets.US_ASCII));
+
+    for(String arg: args) {
+      request.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+      request.write(0);
+    }
+
+    return request.toByteArray();
+  }
+
+  private String send(byte[] request) throws IOException {
+    try(SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(daemon.socketFile))) {
+      client.write(ByteBuffer.wrap(request));
+      client.shutdownOutput();
+
+      // The daemon closes the connection after the exit code.
+      return new String(Channels.newInputStream(client).readAllBytes(),StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import org.junit.jupiter.api.Test;
+import tv.twitch.tandycakes.error.CrimException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CrimParserTest {
+  private static final String[] NAMES = {"run","ruin","rest","list","lint","go","add","and"};
+  private static final String[] TOKENS = {
+    "run","ruin","ru","rest","list","li","go","add","an","x","y","z"
+    ,"-h","--help","-v","--verbose","--verb","-l","--level=3","--level","5"
+    ,"--out=a","--out","-o","b","-f","--force","--f","--vers","--tag=1","-t","2"
+    ,"-","--","-fv","-vf","--bogus","-q","--out = z","--level =9",
+  };
+
+  @Test
+  void splitLikeThePattern() {
+    Random rand = new Random(21);
+    final String alphabet = " \t=\u000Bab-";
+
+    for(int i = 0; i < 20_000; ++i) {
+      StringBuilder arg = new StringBuilder();
+
+      for(int j = rand.nextInt(8); j > 0; --j) {
+        arg.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+      }
+
+      final String text = arg.toString();
+
+      assertArrayEquals(Option.ARG_PATTERN.split(text,2),Option.split(text),text);
+    }
+  }
+
+  @Test
+  void parseLikeTheTwoPassParser() {
+    checkParse(new Random(42),false,false);
+  }
+
+  @Test
+  void parseFrozenLikeTheTwoPassParser() {
+    checkParse(new Random(43),true,false);
+  }
+
+  @Test
+  void parseFrozenThenEditedLikeTheTwoPassParser() {
+    // The frozen indexes must not be used once they're stale.
+    checkParse(new Random(44),true,true);
+  }
+
+  @Test
+  void optionRunnerSupersedesCommand() {
+    Command root = new Command("app");
+    Command globalOptions = new Command("__G__").parent(root);
+    Option help = globalOptions.option("--help","-h").run((crim,command,data) -> {});
+    Command play = root.command("play <game>").run((crim,command,data) -> {});
+    CrimParser parser = new CrimParser(root,globalOptions);
+
+    CrimParser.Result result = parser.parse("play","--help");
+
+    assertSame(play,result.command());
+    assertSame(help,result.optionToRun());
+    assertSame(help.runner,result.runner());
+    assertEquals(List.of(root),result.parentCommands());
+
+    result = parser.parse("pl","sol");
+
+    assertSame(play.runner,result.runner());
+    assertEquals("sol",result.commandData().args().get("<game>"));
+  }
+
+  @Test
+  void suggestCloseCommands() {
+    Crim crim = newSuggestionCrim();
+
+    assertEquals(" Did you mean 'play'?",suggestionOf(crim,"pley"));
+    assertEquals(" Did you mean 'status'?",suggestionOf(crim,"sttas"));
+    // In trie (code point) order.
+    assertEquals(" Did you mean 'step' or 'stop'?",suggestionOf(crim,"stap"));
+    assertEquals("",suggestionOf(crim,"xyzzy"));
+    // Up to 4 code points only allow 1 typo.
+    assertEquals("",suggestionOf(crim,"pyyy"));
+    assertEquals(" Did you mean 'play'?",suggestionOf(crim,"p\uD83C\uDF70ay"));
+    assertEquals("",suggestionOf(crim,"p\uD83C\uDF70\uD83C\uDF70y"));
+    // Only the subcommands of the command.
+    assertEquals("",suggestionOf(crim,"play","stop"));
+  }
+
+  @Test
+  void suggestCloseOptions() {
+    Crim crim = newSuggestionCrim();
+
+    assertEquals(" Did you mean '--fhat'?",suggestionOf(crim,"play","--fhta"));
+    assertEquals(" Did you mean '--help'?",suggestionOf(crim,"play","--hepl"));
+    // The same distance in the command's & the global scope.
+    assertEquals(" Did you mean '--fhat' or '--flat'?",suggestionOf(crim,"play","--fxat"));
+    // The best distance in any scope.
+    assertEquals(" Did you mean '--fhat'?",suggestionOf(crim,"play","--fhaat"));
+    // Options are only suggested for an arg that starts with "-".
+    assertEquals("",suggestionOf(crim,"play","fhat"));
+    assertEquals(" Did you mean '--flat'?",suggestionOf(crim,"--flta"));
+  }
+
+  private static Crim newSuggestionCrim() {
+    Crim crim = new Crim("app","1.0");
+    crim.globalOptions.option("--help","-h");
+    crim.globalOptions.option("--flat");
+    crim.root.command("play").option("--fhat","-f");
+    crim.root.command("status");
+    crim.root.command("stop");
+    crim.root.command("step");
+
+    return crim;
+  }
+
+  /**
+   * <pre>
+   * Returns the " Did you mean '...'?" at the end of the error, or "".
+   * </pre>
+   */
+  private static String suggestionOf(Crim crim,String... args) {
+    CrimException error = assertThrows(CrimException.class,() -> crim.parse(args),Arrays.toString(args));
+    final String message = error.getMessage();
+
+    return message.substring(message.lastIndexOf("'.") + 2);
+  }
+
+  private static void checkParse(Random rand,boolean isFrozen,boolean isEdited) {
+    for(int tree = 0; tree < 100; ++tree) {
+      Command root = new Command("app").run((crim,command,data) -> {});
+      Command globalOptions = new Command("__G__").parent(root);
+      List<Command> commands = buildTree(rand,root,globalOptions);
+      CrimParser parser = new CrimParser(root,globalOptions);
+
+      if(isFrozen) {
+        root.freeze(globalOptions);
+      }
+
+      for(int i = 0; i < 200; ++i) {
+        if(isEdited && i == 100) {
+          Command command = commands.get(rand.nextInt(commands.size()));
+
+          if(!command.options.containsKey("--verbatim")) {
+            command.option("--verbatim","-V");
+          }
+          if(rand.nextBoolean()) {
+            root.freeze(globalOptions);
+          }
+        }
+
+        final String[] args = new String[rand.nextInt(7)];
+
+        for(int j = 0; j < args.length; ++j) {
+          args[j] = TOKENS[rand.nextInt(TOKENS.length)];
+        }
+
+        assertEquals(describe(() -> new TwoPassParser(root,globalOptions,args).parse())
+            ,describe(() -> parser.parse(args)),Arrays.toString(args));
+      }
+    }
+  }
+
+  private static List<Command> buildTree(Random rand,Command root,Command globalOptions) {
+    globalOptions.option("--help","-h").run((crim,command,data) -> {});
+    globalOptions.option("--verbose","-v");
+    globalOptions.option("--level=<n>","-l");
+
+    List<Command> commands = new ArrayList<>();
+    commands.add(root);
+
+    for(int i = 0; i < 6; ++i) {
+      Command parent = commands.get(rand.nextInt(commands.size()));
+      String name = NAMES[rand.nextInt(NAMES.length)];
+
+      if(parent.subcommands.containsKey(name)) {
+        continue;
+      }
+
+      String[] argNames = {"",""," <x>"," <x> <y>"," <files...>"};
+      String args = argNames[rand.nextInt(argNames.length)];
+      Command command = parent.command(name + args);
+
+      if(rand.nextBoolean()) {
+        command.run((crim,cmd,data) -> {});
+      }
+      if(args.contains("...")) {
+        command.multiArg();
+      }
+      if(rand.nextBoolean()) {
+        command.option("--out=<f>","-o");
+      }
+      if(rand.nextBoolean()) {
+        command.option("--force","-f");
+      }
+      if(rand.nextInt(4) == 0) {
+        command.option("--vers").run((crim,cmd,data) -> {});
+      }
+      if(rand.nextInt(3) == 0) {
+        command.option("--tag <t>","-t").multiArg();
+      }
+
+      commands.add(command);
+    }
+
+    return commands;
+  }
+
+  /**
+   * <pre>
+   * The whole result (or error) as text, with the runner by identity.
+   * </pre>
+   */
+  private static String describe(Supplier<CrimParser.Result> parse) {
+    CrimParser.Result result;
+
+    try {
+      result = parse.get();
+    }
+    catch(RuntimeException e) {
+      return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    assertNotNull(result.command());
+
+    List<String> parentNames = new ArrayList<>();
+
+    for(Command parent: result.parentCommands()) {
+      parentNames.add(parent.buildFullName());
+    }
+
+    final CommandData data = result.commandData();
+
+    return System.identityHashCode(result.runner())
+        + " " + result.command().buildFullName()
+        + " parents=" + parentNames
+        + " option=" + ((result.optionToRun() != null) ? result.optionToRun().name : null)
+        + " globalOpts=" + new TreeMap<>(data.globalOpts())
+        + " opts=" + new TreeMap<>(data.opts())
+        + " args=" + data.args()
+        + " multiArgs=" + data.multiArgs();
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * This file is part of Twandy.
+ * Copyright (c) 2021 Bradley Whited
+ */
+
+package tv.twitch.tandycakes.crim;
+
+import tv.twitch.tandycakes.Formatter;
+import tv.twitch.tandycakes.error.CrimException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <pre>
+ * The old 2-pass parser (before CrimParser parsed in 1 pass), as a reference
+ * to check CrimParser against: the 1st pass only looks for an option runner,
+ * & the 2nd pass parses for real, knowing if there is one.
+ *
+ * Unlike the original, each pass starts with new data & parents, so that the
+ * 1st pass can't leak into the 2nd.
+ *
+ * Only for tests, so not thread-safe & not fast.
+ * </pre>
+ */
+final class TwoPassParser {
+  private final String[] mainArgs;
+  private int mainArgsIndex = 0;
+
+  private final Command root;
+  private final Command globalOptions;
+
+  private Command command;
+  private CommandData commandData;
+
+  private Option optionToRun;
+  private String[] commandArgNames;
+  private int commandArgNamesIndex;
+  private boolean eatAllCommandArgs;
+  private Deque<Command> parentCommands;
+
+  private enum Pass {
+    NORMAL,FOR_OPT_RUNNER,HAS_OPT_RUNNER
+  }
+
+  TwoPassParser(Command root,Command globalOptions,String... mainArgs) {
+    this.mainArgs = mainArgs;
+    this.root = root;
+    this.globalOptions = globalOptions;
+  }
+
+  CrimParser.Result parse() {
+    CommandRunner runner = parse(Pass.FOR_OPT_RUNNER);
+    runner = parse((runner == null) ? Pass.NORMAL : Pass.HAS_OPT_RUNNER);
+
+    return new CrimParser.Result(runner,command,commandData,optionToRun,new ArrayList<>(parentCommands));
+  }
+
+  private CommandRunner parse(Pass pass) {
+    command = root;
+    commandData = new CommandData();
+    parentCommands = new ArrayDeque<>();
+    optionToRun = null;
+    commandArgNames = command.hasArgs() ? command.argNames : null;
+    commandArgNamesIndex = 0;
+    eatAllCommandArgs = command.isMultiArg;
+
+    for(mainArgsIndex = 0; mainArgsIndex < mainArgs.length; ++mainArgsIndex) {
+      final String mainArg = mainArgs[mainArgsIndex];
+      final String[] parts = Option.ARG_PATTERN.split(mainArg,2);
+      final String optionName = parts[0];
+      final String optionArg = (parts.length == 2) ? parts[1] : null;
+      Option option;
+
+      // First, current command's local options.
+      if((option = command.optionTrie.find(optionName)) != null) {
+        if(option.runner != null && pass == Pass.FOR_OPT_RUNNER) {
+          return option.runner;
+        }
+
+        parseOption(commandData.opts(),optionName,optionArg,option);
+        continue;
+      }
+
+      // Second, global options.
+      if(globalOptions != null && (option = globalOptions.optionTrie.find(optionName)) != null) {
+        if(option.runner != null && pass == Pass.FOR_OPT_RUNNER) {
+          return option.runner;
+        }
+
+        parseOption(commandData.globalOpts(),optionName,optionArg,option);
+        continue;
+      }
+
+      // Third, parent/previous commands' local options.
+      for(Command parentCommand: parentCommands) {
+        if((option = parentCommand.optionTrie.find(optionName)) != null) {
+          if(option.runner != null && pass == Pass.FOR_OPT_RUNNER) {
+            return option.runner;
+          }
+
+          parseOption(commandData.opts(),optionName,optionArg,option);
+          break;
+        }
+      }
+
+      if(option != null) {
+        continue;
+      }
+
+      // Lastly, args/subcommands.
+      Command sub;
+
+      if(pass != Pass.NORMAL || optionToRun != null) {
+        // Don't consume args if there's an option runner.
+        if((sub = command.subcommandTrie.find(mainArg)) != null) {
+          parentCommands.addFirst(command);
+          command = sub;
+        }
+      }
+      else if(eatAllCommandArgs) {
+        commandData.multiArgs().add(mainArg);
+      }
+      else if(commandArgNames != null) {
+        commandData.args().put(commandArgNames[commandArgNamesIndex],mainArg);
+
+        if((++commandArgNamesIndex) >= commandArgNames.length) {
+          commandArgNames = null;
+          commandArgNamesIndex = 0;
+        }
+      }
+      else if((sub = command.subcommandTrie.find(mainArg)) != null) {
+        if(sub.isMultiArg) {
+          eatAllCommandArgs = true;
+        }
+        else if(sub.hasArgs()) {
+          commandArgNames = sub.argNames;
+        }
+
+        parentCommands.addFirst(command);
+        command = sub;
+      }
+      else {
+        final String suggestion = buildSuggestion(optionName,mainArg);
+
+        if(command.isRoot()) {
+          throw new CrimException(Formatter.format(
+              "Invalid option/command: '{}'.{}",mainArg,suggestion));
+        }
+
+        throw new CrimException(Formatter.format(
+            "For command '{}', invalid option/command: '{}'.{}"
+            ,command.buildFullName(root),mainArg,suggestion));
+      }
+    }
+
+    if(pass == Pass.FOR_OPT_RUNNER) {
+      return (optionToRun != null) ? optionToRun.runner : null;
+    }
+
+    if(optionToRun == null && commandArgNames != null
+        && commandArgNamesIndex < commandArgNames.length) {
+      final String plural = (commandArgNames.length == 1) ? "" : "s";
+
+      if(command.isRoot()) {
+        throw new CrimException(Formatter.format(
+            "Missing {} required arg{}.",commandArgNames.length,plural));
+      }
+
+      throw new CrimException(Formatter.format(
+          "Command '{}' requires {} arg{}.",command.buildFullName(root),commandArgNames.length,plural));
+    }
+
+    if(optionToRun != null) {
+      return optionToRun.runner;
+    }
+
+    return (command.runner != null) ? command.runner : root.runner;
+  }
+
+  private void parseOption(Map<String,String> dataOptions,String optionName,String optionArg,Option option) {
+    final String label = command.isRoot() ? "Option"
+        : Formatter.format("Command '{}' option",command.buildFullName(root));
+
+    if(option.argName == null) {
+      if(optionArg != null) {
+        throw new CrimException(Formatter.format(
+            "{} '{}' does not accept args: '{}'.",label,optionName,optionArg));
+      }
+
+      dataOptions.put(option.name,"");
+    }
+    else {
+      if(optionArg == null) {
+        if((++mainArgsIndex) >= mainArgs.length) {
+          throw new CrimException(Formatter.format("{} '{}' requires an arg.",label,optionName));
+        }
+
+        optionArg = mainArgs[mainArgsIndex];
+      }
+
+      dataOptions.put(option.name,optionArg);
+    }
+
+    if(option.runner != null) {
+      if(optionToRun != null) {
+        throw new CrimException(Formatter.format(
+            "{} '{}' conflicts with option '{}' runner.",label,optionName,optionToRun.name));
+      }
+
+      optionToRun = option;
+    }
+  }
+
+  private String buildSuggestion(String optionName,String mainArg) {
+    Set<String> names = new LinkedHashSet<>();
+
+    if(optionName.startsWith("-")) {
+      final int maxDistance = calcMaxTypos(optionName);
+      List<Option> bestOptions = new ArrayList<>();
+      List<Option> options = new ArrayList<>();
+      int bestDistance = -1;
+
+      List<Command> scopes = new ArrayList<>();
+      scopes.add(command);
+
+      if(globalOptions != null) {
+        scopes.add(globalOptions);
+      }
+
+      scopes.addAll(parentCommands);
+
+      for(Command scope: scopes) {
+        options.clear();
+        final int distance = scope.optionTrie.findFuzzy(optionName,maxDistance,options);
+
+        if(distance < 0 || (bestDistance >= 0 && distance > bestDistance)) {
+          continue;
+        }
+        if(bestDistance < 0 || distance < bestDistance) {
+          bestDistance = distance;
+          bestOptions.clear();
+        }
+
+        bestOptions.addAll(options);
+      }
+
+      for(Option option: bestOptions) {
+        names.add(option.name);
+      }
+    }
+    else {
+      for(Command sub: command.subcommandTrie.findFuzzy(mainArg,calcMaxTypos(mainArg))) {
+        names.add(sub.name);
+      }
+    }
+
+    if(names.isEmpty()) {
+      return "";
+    }
+
+    return Formatter.format(" Did you mean '{}'?",String.join("' or '",names));
+  }
+
+  private static int calcMaxTypos(String arg) {
+    return (arg.codePointCount(0,arg.length()) <= 4) ? 1 : 2;
+  }
+}